@@ -0,0 +1,393 @@
+package de.evosec.leaktest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays the requests of a Tomcat or Apache access log in the common or
+ * combined format against the deployed web application before it is
+ * undeployed, so the leak test covers the code paths production traffic
+ * takes.
+ * <p>
+ * The log is streamed line by line into a small bounded queue that the
+ * clients take their requests from, so memory use does not depend on the size
+ * of the log. Requests are sent with their method, path and query but without
+ * a body, at the pace of their timestamps multiplied by the speed. Logs ending
+ * in {@code .gz} are decompressed on the fly.
+ */
+public final class AccessLogReplay {
+
+	static final class Request {
+
+		final long timestamp;
+		final String method;
+		final String target;
+
+		Request(long timestamp, String method, String target) {
+			this.timestamp = timestamp;
+			this.method = method;
+			this.target = target;
+		}
+
+	}
+
+	private static final int QUEUE_PER_CLIENT = 16;
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter
+	    .ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
+	private static final Request END = new Request(0, null, null);
+
+	private final Path logFile;
+	private double speed = 1;
+	private int clients = 4;
+	private long requests = Long.MAX_VALUE;
+	private long durationMillis = 0;
+	private long requestTimeoutMillis = 10000;
+	private String contextPath = "";
+	private boolean failOnError = false;
+
+	public AccessLogReplay(Path logFile) {
+		this.logFile = logFile;
+	}
+
+	/**
+	 * Multiplies the pace of the logged timestamps, {@code 1} replays in real
+	 * time, {@code 10} ten times faster and {@code 0} as fast as the clients
+	 * can send.
+	 */
+	public AccessLogReplay speed(double speed) {
+		this.speed = speed;
+		return this;
+	}
+
+	public AccessLogReplay clients(int clients) {
+		this.clients = clients;
+		return this;
+	}
+
+	/**
+	 * Stops after the given number of replayed requests.
+	 */
+	public AccessLogReplay requests(long requests) {
+		this.requests = requests;
+		return this;
+	}
+
+	/**
+	 * Stops after the given time even if the log has more requests.
+	 */
+	public AccessLogReplay duration(long duration, TimeUnit unit) {
+		this.durationMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	public AccessLogReplay requestTimeout(long timeout, TimeUnit unit) {
+		this.requestTimeoutMillis = unit.toMillis(timeout);
+		return this;
+	}
+
+	/**
+	 * Replays only requests below the given context path of the logging
+	 * server and removes it, by default every request is replayed as logged.
+	 */
+	public AccessLogReplay contextPath(String contextPath) {
+		this.contextPath = contextPath;
+		return this;
+	}
+
+	/**
+	 * Fails the test if a request failed or answered with a server error,
+	 * disabled by default because replayed requests have no body and the
+	 * test lacks the data of production.
+	 */
+	public AccessLogReplay failOnError(boolean failOnError) {
+		this.failOnError = failOnError;
+		return this;
+	}
+
+	Path getLogFile() {
+		return logFile;
+	}
+
+	boolean isFailOnError() {
+		return failOnError;
+	}
+
+	void checkArguments() {
+		if (logFile == null) {
+			throw new IllegalArgumentException("logFile cannot be null");
+		}
+		if (speed < 0) {
+			throw new IllegalArgumentException("speed cannot be negative");
+		}
+		if (clients < 1) {
+			throw new IllegalArgumentException("clients must be positive");
+		}
+		if (requests < 1) {
+			throw new IllegalArgumentException("requests must be positive");
+		}
+		if (durationMillis < 0) {
+			throw new IllegalArgumentException("duration cannot be negative");
+		}
+		if (requestTimeoutMillis < 1) {
+			throw new IllegalArgumentException(
+			    "requestTimeout must be positive");
+		}
+		if (contextPath == null) {
+			throw new IllegalArgumentException("contextPath cannot be null");
+		}
+		if (!Files.isReadable(logFile)) {
+			throw new IllegalArgumentException(
+			    "Access log is not readable: " + logFile);
+		}
+	}
+
+	/**
+	 * Replays the log with all clients and waits until they are done.
+	 *
+	 * @param targetContextPath the path the web application is deployed at
+	 */
+	TrafficReport run(final String host, final int port,
+	        final String targetContextPath)
+	        throws IOException, InterruptedException {
+		checkArguments();
+		final TrafficReport report = new TrafficReport();
+		final BlockingQueue<Request> queue =
+		        new ArrayBlockingQueue<>(clients * QUEUE_PER_CLIENT);
+		long start = System.nanoTime();
+		final long deadline = durationMillis > 0
+		        ? start + TimeUnit.MILLISECONDS.toNanos(durationMillis)
+		        : Long.MAX_VALUE;
+
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		try {
+			List<Future<Void>> senders = new ArrayList<>();
+			for (int i = 0; i < clients; i++) {
+				senders.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws IOException, InterruptedException {
+						HttpProbeClient client =
+						        new HttpProbeClient(host, port);
+						try {
+							Request request;
+							while ((request = queue.take()) != END) {
+								// keeps taking, so the reader is not blocked
+								if (expired(deadline)) {
+									continue;
+								}
+								send(client, request, targetContextPath,
+								    report);
+							}
+						} finally {
+							report.connections(client.getConnections());
+							client.close();
+						}
+						return null;
+					}
+
+				}));
+			}
+
+			try {
+				read(queue, report, start, deadline);
+			} finally {
+				for (int i = 0; i < clients; i++) {
+					queue.put(END);
+				}
+			}
+
+			for (Future<Void> sender : senders) {
+				try {
+					sender.get();
+				} catch (ExecutionException e) {
+					// closing a client failed, the requests are recorded
+					e.getCause().printStackTrace();
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		report.duration(System.nanoTime() - start);
+		return report;
+	}
+
+	private void send(HttpProbeClient client, Request request,
+	        String targetContextPath, TrafficReport report) {
+		String target = targetContextPath + request.target;
+		int query = target.indexOf('?');
+		String path = query < 0 ? target : target.substring(0, query);
+		long start = System.nanoTime();
+		int status = -1;
+		try {
+			status = client.request(request.method, target,
+			    requestTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (IOException e) {
+			report.failure(path, e);
+		} catch (RuntimeException e) {
+			// a sender that died would leave the reader blocked on the queue,
+			// the connection may be in any state, so it is not reused
+			report.failure(path, e);
+			try {
+				client.close();
+			} catch (IOException closeFailure) {
+				closeFailure.printStackTrace();
+			}
+		}
+		report.record(path, status, status == -1 || status >= 500,
+		    System.nanoTime() - start);
+	}
+
+	/**
+	 * Queues the requests of the log, each one not before its logged offset
+	 * from the first one divided by the speed.
+	 */
+	private void read(BlockingQueue<Request> queue, TrafficReport report,
+	        long start, long deadline)
+	        throws IOException, InterruptedException {
+		long first = -1;
+		long queued = 0;
+		try (BufferedReader reader = open()) {
+			String line;
+			while (queued < requests && !expired(deadline)
+			        && (line = reader.readLine()) != null) {
+				Request request = parse(line, contextPath);
+				if (request == null) {
+					report.skipped();
+					continue;
+				}
+				if (speed > 0) {
+					if (first < 0) {
+						first = request.timestamp;
+					}
+					long due = start + (long) (TimeUnit.MILLISECONDS
+					    .toNanos(request.timestamp - first) / speed);
+					if (deadline != Long.MAX_VALUE && due - deadline >= 0) {
+						break;
+					}
+					TimeUnit.NANOSECONDS.sleep(due - System.nanoTime());
+				}
+				queue.put(request);
+				queued++;
+			}
+		}
+	}
+
+	private BufferedReader open() throws IOException {
+		InputStream in = Files.newInputStream(logFile);
+		try {
+			if (logFile.getFileName().toString().endsWith(".gz")) {
+				in = new GZIPInputStream(in);
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return new BufferedReader(
+		    new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	private static boolean expired(long deadline) {
+		return deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+	}
+
+	/**
+	 * Parses the timestamp and the request line of a log line like
+	 * {@code 127.0.0.1 - - [10/Oct/2016:13:55:36 +0200] "GET /a?b=c HTTP/1.1"
+	 * 200 2326}.
+	 *
+	 * @return the request with the target below {@code contextPath} or
+	 *         {@code null} if the line is malformed, the request line was not
+	 *         logged or the target is outside {@code contextPath}
+	 */
+	static Request parse(String line, String contextPath) {
+		int open = line.indexOf('[');
+		int close = open < 0 ? -1 : line.indexOf(']', open);
+		int quote = close < 0 ? -1 : line.indexOf('"', close);
+		int endQuote = quote < 0 ? -1 : line.indexOf('"', quote + 1);
+		if (endQuote < 0) {
+			return null;
+		}
+
+		long timestamp;
+		try {
+			timestamp = ZonedDateTime
+			    .parse(line.substring(open + 1, close), TIMESTAMP).toInstant()
+			    .toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+
+		String[] requestLine = line.substring(quote + 1, endQuote).split(" ");
+		if (requestLine.length < 2 || !isToken(requestLine[0])
+		        || "CONNECT".equals(requestLine[0])) {
+			return null;
+		}
+		String target = requestLine[1];
+		int scheme = target.indexOf("://");
+		if (scheme > 0 && !target.startsWith("/")) {
+			// absolute form sent to proxies
+			int slash = target.indexOf('/', scheme + 3);
+			target = slash < 0 ? "/" : target.substring(slash);
+		}
+		if (!target.startsWith(contextPath)) {
+			return null;
+		}
+		target = target.substring(contextPath.length());
+		if (target.isEmpty() || target.charAt(0) == '?') {
+			target = "/" + target;
+		}
+		if (target.charAt(0) != '/' || !isVisibleAscii(target)) {
+			return null;
+		}
+		return new Request(timestamp, requestLine[0], target);
+	}
+
+	private static boolean isToken(String method) {
+		if (method.isEmpty()) {
+			return false;
+		}
+		for (int i = 0; i < method.length(); i++) {
+			char c = method.charAt(i);
+			if (c < 'A' || c > 'Z') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isVisibleAscii(String target) {
+		for (int i = 0; i < target.length(); i++) {
+			char c = target.charAt(i);
+			if (c <= ' ' || c >= 0x7f) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return logFile + " at " + speed + "x with " + clients + " clients";
+	}
+
+}
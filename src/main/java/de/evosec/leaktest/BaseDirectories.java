@@ -0,0 +1,86 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The {@link BaseDirectoryProvider}s of the harness.
+ */
+public final class BaseDirectories {
+
+	private static final Path DEV_SHM = Paths.get("/dev/shm");
+
+	private static final BaseDirectoryProvider TEMP =
+	        new BaseDirectoryProvider() {
+
+		        @Override
+		        public Path create(String prefix, long requiredSpace)
+		                throws IOException {
+			        return Files.createTempDirectory(prefix);
+		        }
+
+	        };
+
+	private BaseDirectories() {
+	}
+
+	/**
+	 * @return a provider creating directories in {@code java.io.tmpdir}
+	 */
+	public static BaseDirectoryProvider temp() {
+		return TEMP;
+	}
+
+	/**
+	 * @return a provider creating directories in {@code /dev/shm} if it is
+	 *         writable and has the required space left, otherwise in
+	 *         {@code java.io.tmpdir}
+	 */
+	public static BaseDirectoryProvider ramPreferred() {
+		return ramPreferred(DEV_SHM);
+	}
+
+	/**
+	 * @return a provider creating directories in {@code ramDirectory} if it is
+	 *         writable and has the required space left, otherwise in
+	 *         {@code java.io.tmpdir}
+	 */
+	public static BaseDirectoryProvider ramPreferred(final Path ramDirectory) {
+		return new BaseDirectoryProvider() {
+
+			@Override
+			public Path create(String prefix, long requiredSpace)
+			        throws IOException {
+				if (Files.isDirectory(ramDirectory)
+				        && Files.isWritable(ramDirectory)
+				        && Files.getFileStore(ramDirectory)
+				            .getUsableSpace() >= requiredSpace) {
+					try {
+						return Files.createTempDirectory(ramDirectory, prefix);
+					} catch (IOException e) {
+						// fall back to disk
+					}
+				}
+				return TEMP.create(prefix, requiredSpace);
+			}
+
+		};
+	}
+
+	/**
+	 * @return {@code true} if {@code directory} is on a file system kept in
+	 *         memory
+	 */
+	static boolean isRamBacked(Path directory) {
+		try {
+			FileStore store = Files.getFileStore(directory);
+			return "tmpfs".equals(store.type()) || "ramfs".equals(store.type());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,21 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Creates the directory Tomcat uses as catalina.base, which holds the
+ * expanded WARs, the Jasper work files and persisted sessions.
+ *
+ * @see BaseDirectories
+ */
+public interface BaseDirectoryProvider {
+
+	/**
+	 * @param requiredSpace the number of bytes the directory is expected to
+	 *        grow to
+	 * @return a new empty directory
+	 */
+	Path create(String prefix, long requiredSpace) throws IOException;
+
+}
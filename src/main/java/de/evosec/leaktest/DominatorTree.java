@@ -0,0 +1,246 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+
+import de.evosec.leaktest.IndexFile.IntArray;
+import de.evosec.leaktest.IndexFile.LongArray;
+
+/**
+ * Immediate dominators and retained sizes of all objects reachable from the
+ * GC roots of an {@link ObjectIndex}, computed with the Lengauer-Tarjan
+ * algorithm. A virtual root above all GC roots makes the graph single rooted,
+ * objects dominated by nothing but the virtual root are kept alive by more
+ * than one GC root.
+ */
+final class DominatorTree {
+
+	private final ObjectIndex index;
+	// index of the virtual root
+	private final int root;
+	// depth first search number starting at 1, 0 for unreachable objects
+	private final IntArray numbers;
+	private final IntArray dominators;
+	private final LongArray retainedSizes;
+
+	DominatorTree(ObjectIndex index) throws IOException {
+		this.index = index;
+		root = index.size();
+		IndexFile file = index.file();
+		int nodes = root + 1;
+		numbers = file.allocateInts(nodes);
+		IntArray vertices = file.allocateInts(nodes + 1L);
+		IntArray parents = file.allocateInts(nodes);
+		int count = depthFirstSearch(vertices, parents);
+
+		LongArray predecessorStarts = file.allocateLongs(nodes + 1L);
+		IntArray predecessors = predecessors(predecessorStarts);
+
+		// semi dominators are stored as their depth first search number,
+		// ancestors and the buckets as index + 1 so 0 means none
+		IntArray semis = file.allocateInts(nodes);
+		IntArray ancestors = file.allocateInts(nodes);
+		IntArray best = file.allocateInts(nodes);
+		IntArray sameDominators = file.allocateInts(nodes);
+		IntArray bucketHeads = file.allocateInts(nodes);
+		IntArray bucketNext = file.allocateInts(nodes);
+		IntArray path = file.allocateInts(nodes);
+		dominators = file.allocateInts(nodes);
+		for (int i = count; i >= 2; i--) {
+			int node = vertices.get(i);
+			int parent = parents.get(node);
+			int semi = numbers.get(parent);
+			long end = predecessorStarts.get(node + 1);
+			for (long p = predecessorStarts.get(node); p < end; p++) {
+				int predecessor = predecessors.get(p);
+				int number = numbers.get(predecessor);
+				if (number == 0) {
+					continue;
+				}
+				int candidate = number <= i ? number
+				        : semis.get(ancestorWithLowestSemi(predecessor,
+				            ancestors, best, semis, path));
+				if (candidate < semi) {
+					semi = candidate;
+				}
+			}
+			semis.set(node, semi);
+			int semiNode = vertices.get(semi);
+			bucketNext.set(node, bucketHeads.get(semiNode));
+			bucketHeads.set(semiNode, node + 1);
+
+			ancestors.set(node, parent + 1);
+			best.set(node, node);
+			for (int v = bucketHeads.get(parent) - 1; v >= 0;
+			        v = bucketNext.get(v) - 1) {
+				int y = ancestorWithLowestSemi(v, ancestors, best, semis, path);
+				if (semis.get(y) == semis.get(v)) {
+					dominators.set(v, parent);
+				} else {
+					sameDominators.set(v, y + 1);
+				}
+			}
+			bucketHeads.set(parent, 0);
+		}
+		for (int i = 2; i <= count; i++) {
+			int node = vertices.get(i);
+			int sameDominator = sameDominators.get(node);
+			if (sameDominator != 0) {
+				dominators.set(node, dominators.get(sameDominator - 1));
+			}
+		}
+
+		// dominators are numbered before the objects they dominate
+		retainedSizes = file.allocateLongs(nodes);
+		for (int i = count; i >= 2; i--) {
+			int node = vertices.get(i);
+			long retainedSize =
+			        retainedSizes.get(node) + index.shallowSize(node);
+			retainedSizes.set(node, retainedSize);
+			int dominator = dominators.get(node);
+			retainedSizes.set(dominator,
+			    retainedSizes.get(dominator) + retainedSize);
+		}
+	}
+
+	public boolean isReachable(int object) {
+		return numbers.get(object) != 0;
+	}
+
+	/**
+	 * @return the index of the immediate dominator or {@code -1} if the
+	 *         object is unreachable or only dominated by the virtual root
+	 */
+	public int immediateDominator(int object) {
+		if (!isReachable(object)) {
+			return -1;
+		}
+		int dominator = dominators.get(object);
+		return dominator == root ? -1 : dominator;
+	}
+
+	/**
+	 * @return the bytes that would be freed if the object was collected, or
+	 *         {@code 0} if it is unreachable already
+	 */
+	public long retainedSize(int object) {
+		return retainedSizes.get(object);
+	}
+
+	/**
+	 * @return the bytes of all objects reachable from the GC roots
+	 */
+	public long reachableSize() {
+		return retainedSizes.get(root);
+	}
+
+	private int depthFirstSearch(IntArray vertices, IntArray parents)
+	        throws IOException {
+		int[] roots = index.roots();
+		IntArray stack = index.file().allocateInts(root + 1L);
+		// position in the roots of the virtual root or in the edges
+		LongArray cursors = index.file().allocateLongs(root + 1L);
+		int count = 1;
+		numbers.set(root, count);
+		vertices.set(count, root);
+		int depth = 0;
+		stack.set(depth, root);
+		while (depth >= 0) {
+			int node = stack.get(depth);
+			long cursor = cursors.get(depth);
+			long end = node == root ? roots.length : index.edgeStart(node + 1);
+			int next = -1;
+			while (next < 0 && cursor < end) {
+				int target = node == root ? roots[(int) cursor]
+				        : index.edge(cursor);
+				cursor++;
+				if (numbers.get(target) == 0) {
+					next = target;
+				}
+			}
+			cursors.set(depth, cursor);
+			if (next < 0) {
+				depth--;
+			} else {
+				numbers.set(next, ++count);
+				vertices.set(count, next);
+				parents.set(next, node);
+				depth++;
+				stack.set(depth, next);
+				cursors.set(depth, index.edgeStart(next));
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Inverts the edges between reachable objects and from the virtual root.
+	 * The predecessors of object {@code i} are {@code starts(i)} (inclusive)
+	 * to {@code starts(i + 1)} (exclusive).
+	 */
+	private IntArray predecessors(LongArray starts) throws IOException {
+		int[] roots = index.roots();
+		for (int node = 0; node < root; node++) {
+			if (isReachable(node)) {
+				long end = index.edgeStart(node + 1);
+				for (long edge = index.edgeStart(node); edge < end; edge++) {
+					int target = index.edge(edge);
+					starts.set(target, starts.get(target) + 1);
+				}
+			}
+		}
+		for (int target : roots) {
+			starts.set(target, starts.get(target) + 1);
+		}
+		long total = 0;
+		for (int node = 0; node <= root; node++) {
+			total += starts.get(node);
+			starts.set(node, total);
+		}
+		starts.set(root + 1, total);
+
+		// fills every range from its end, which leaves the starts behind
+		IntArray predecessors = index.file().allocateInts(total);
+		for (int node = 0; node < root; node++) {
+			if (isReachable(node)) {
+				long end = index.edgeStart(node + 1);
+				for (long edge = index.edgeStart(node); edge < end; edge++) {
+					int target = index.edge(edge);
+					long position = starts.get(target) - 1;
+					starts.set(target, position);
+					predecessors.set(position, node);
+				}
+			}
+		}
+		for (int target : roots) {
+			long position = starts.get(target) - 1;
+			starts.set(target, position);
+			predecessors.set(position, root);
+		}
+		return predecessors;
+	}
+
+	/**
+	 * Evaluates the linked ancestors of {@code node} with path compression,
+	 * iteratively because reference chains can be millions of objects long.
+	 */
+	private static int ancestorWithLowestSemi(int node, IntArray ancestors,
+	        IntArray best, IntArray semis, IntArray path) {
+		int depth = 0;
+		int current = node;
+		while (ancestors.get(ancestors.get(current) - 1) != 0) {
+			path.set(depth++, current);
+			current = ancestors.get(current) - 1;
+		}
+		while (depth > 0) {
+			int descendant = path.get(--depth);
+			int ancestor = ancestors.get(descendant) - 1;
+			int candidate = best.get(ancestor);
+			ancestors.set(descendant, ancestors.get(ancestor));
+			if (semis.get(candidate) < semis.get(best.get(descendant))) {
+				best.set(descendant, candidate);
+			}
+		}
+		return best.get(node);
+	}
+
+}
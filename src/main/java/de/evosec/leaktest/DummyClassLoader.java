@@ -2,9 +2,19 @@ package de.evosec.leaktest;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DummyClassLoader extends ClassLoader {
 
+	static {
+		registerAsParallelCapable();
+	}
+
+	private static final FillerClassTemplate TEMPLATE =
+	        new FillerClassTemplate();
+
+	private final AtomicLong nextIndex = new AtomicLong();
+
 	public static DummyClassLoader newInstance() {
 		return AccessController
 		    .doPrivileged(new PrivilegedAction<DummyClassLoader>() {
@@ -17,4 +27,16 @@ public class DummyClassLoader extends ClassLoader {
 		    });
 	}
 
+	/**
+	 * Defines {@code count} new empty classes. Safe to call from several
+	 * threads at once, every call patches its own copy of the class file.
+	 */
+	public void defineFillerClasses(int count) {
+		byte[] buffer = TEMPLATE.newBuffer();
+		for (int i = 0; i < count; i++) {
+			TEMPLATE.patch(buffer, nextIndex.getAndIncrement());
+			defineClass(null, buffer, 0, buffer.length);
+		}
+	}
+
 }
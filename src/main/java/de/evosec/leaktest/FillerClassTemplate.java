@@ -0,0 +1,69 @@
+package de.evosec.leaktest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class file of an empty {@code public class de.test.Filler_<index>}. Only the
+ * hexadecimal index inside the class name constant is patched per class, so a
+ * single buffer can be reused for any number of definitions.
+ */
+final class FillerClassTemplate {
+
+	private static final String NAME_PREFIX = "de/test/Filler_";
+	private static final int NAME_DIGITS = 16;
+	private static final byte[] HEX_DIGITS =
+	        "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	private final byte[] bytecode;
+	private final int nameOffset;
+
+	FillerClassTemplate() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0); // minor version
+			out.writeShort(49); // Java 5, no stack map frames required
+			out.writeShort(5); // constant pool count + 1
+			out.writeByte(1); // #1 Utf8 class name
+			out.writeShort(NAME_PREFIX.length() + NAME_DIGITS);
+			out.flush();
+			nameOffset = bytes.size() + NAME_PREFIX.length();
+			out.writeBytes(NAME_PREFIX);
+			for (int i = 0; i < NAME_DIGITS; i++) {
+				out.writeByte('0');
+			}
+			out.writeByte(7); // #2 Class #1
+			out.writeShort(1);
+			out.writeByte(1); // #3 Utf8 super class name
+			out.writeUTF("java/lang/Object");
+			out.writeByte(7); // #4 Class #3
+			out.writeShort(3);
+			out.writeShort(0x0001 | 0x0020); // ACC_PUBLIC | ACC_SUPER
+			out.writeShort(2); // this class
+			out.writeShort(4); // super class
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(0); // methods
+			out.writeShort(0); // attributes
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		bytecode = bytes.toByteArray();
+	}
+
+	public byte[] newBuffer() {
+		return bytecode.clone();
+	}
+
+	public void patch(byte[] buffer, long index) {
+		for (int i = NAME_DIGITS - 1; i >= 0; i--) {
+			buffer[nameOffset + i] = HEX_DIGITS[(int) (index & 0xF)];
+			index >>>= 4;
+		}
+	}
+
+}
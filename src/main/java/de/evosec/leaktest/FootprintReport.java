@@ -0,0 +1,172 @@
+package de.evosec.leaktest;
+
+import java.lang.management.MemoryUsage;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Memory snapshots taken around the deployment and undeployment of a web
+ * application, reported as deltas to the previous phase.
+ */
+public final class FootprintReport {
+
+	public enum Phase {
+
+		BEFORE_START("before start"),
+		AFTER_DEPLOY("after deploy"),
+		AFTER_TRAFFIC("after traffic"),
+		AFTER_UNDEPLOY("after undeploy"),
+		AFTER_VERDICT("after leak verdict");
+
+		private final String description;
+
+		Phase(String description) {
+			this.description = description;
+		}
+
+		@Override
+		public String toString() {
+			return description;
+		}
+
+	}
+
+	private final Map<Phase, MemorySnapshot> snapshots =
+	        new EnumMap<>(Phase.class);
+	private long fillerClasses = 0;
+	private long unloadedFillerClasses = 0;
+
+	void snapshot(Phase phase) {
+		snapshots.put(phase, MemorySnapshot.take());
+	}
+
+	void fillerClasses(long fillerClasses, long unloadedFillerClasses) {
+		this.fillerClasses = fillerClasses;
+		this.unloadedFillerClasses = unloadedFillerClasses;
+	}
+
+	/**
+	 * @return the snapshot or {@code null} if the phase was not reached
+	 */
+	public MemorySnapshot getSnapshot(Phase phase) {
+		return snapshots.get(phase);
+	}
+
+	/**
+	 * @return the Metaspace used by the deployment, including the Tomcat
+	 *         classes loaded for the first deployment of this JVM
+	 */
+	public long getDeployedMetaspace() {
+		MemorySnapshot before = snapshots.get(Phase.BEFORE_START);
+		MemorySnapshot after = snapshots.get(Phase.AFTER_DEPLOY);
+		if (before == null || after == null) {
+			return 0;
+		}
+		return after.getMetaspaceUsed() - before.getMetaspaceUsed();
+	}
+
+	public long getDeployedClasses() {
+		MemorySnapshot before = snapshots.get(Phase.BEFORE_START);
+		MemorySnapshot after = snapshots.get(Phase.AFTER_DEPLOY);
+		if (before == null || after == null) {
+			return 0;
+		}
+		return after.getTotalLoadedClassCount()
+		        - before.getTotalLoadedClassCount();
+	}
+
+	/**
+	 * @return the classes unloaded while waiting for the leak verdict without
+	 *         the filler classes put into Metaspace to force class unloading
+	 */
+	public long getUnloadedClasses() {
+		MemorySnapshot before = snapshots.get(Phase.AFTER_UNDEPLOY);
+		MemorySnapshot after = snapshots.get(Phase.AFTER_VERDICT);
+		if (before == null || after == null) {
+			return 0;
+		}
+		return Math.max(0, after.getUnloadedClassCount()
+		        - before.getUnloadedClassCount() - unloadedFillerClasses);
+	}
+
+	/**
+	 * @return the code cache freed while waiting for the leak verdict
+	 */
+	public long getReleasedCodeCache() {
+		MemorySnapshot before = snapshots.get(Phase.AFTER_UNDEPLOY);
+		MemorySnapshot after = snapshots.get(Phase.AFTER_VERDICT);
+		if (before == null || after == null) {
+			return 0;
+		}
+		return before.getCodeCacheUsed() - after.getCodeCacheUsed();
+	}
+
+	public long getFillerClasses() {
+		return fillerClasses;
+	}
+
+	/**
+	 * @return the filler classes that were unloaded before the leak verdict
+	 *         snapshot, they are not counted by {@link #getUnloadedClasses()}
+	 */
+	public long getUnloadedFillerClasses() {
+		return unloadedFillerClasses;
+	}
+
+	@Override
+	public String toString() {
+		String lineSeparator = System.lineSeparator();
+		StringBuilder builder = new StringBuilder("Footprint per phase:");
+		MemorySnapshot previous = null;
+		for (Map.Entry<Phase, MemorySnapshot> entry : snapshots.entrySet()) {
+			MemorySnapshot snapshot = entry.getValue();
+			builder.append(lineSeparator).append("  ").append(entry.getKey())
+			    .append(": ").append(snapshot.getLoadedClassCount())
+			    .append(" classes loaded");
+			if (previous != null) {
+				appendDeltas(builder, previous, snapshot);
+			}
+			if (entry.getKey() == Phase.AFTER_VERDICT && fillerClasses > 0) {
+				builder.append(" (").append(fillerClasses)
+				    .append(" filler classes defined, ")
+				    .append(unloadedFillerClasses).append(" unloaded)");
+			}
+			previous = snapshot;
+		}
+		return builder.toString();
+	}
+
+	private static void appendDeltas(StringBuilder builder,
+	        MemorySnapshot previous, MemorySnapshot snapshot) {
+		builder.append(", ")
+		    .append(snapshot.getTotalLoadedClassCount()
+		            - previous.getTotalLoadedClassCount())
+		    .append(" defined, ")
+		    .append(snapshot.getUnloadedClassCount()
+		            - previous.getUnloadedClassCount())
+		    .append(" unloaded");
+		for (Map.Entry<String, MemoryUsage> entry : snapshot.getMemoryPools()
+		    .entrySet()) {
+			MemoryUsage before = previous.getMemoryPools().get(entry.getKey());
+			if (before != null) {
+				builder.append(", ").append(entry.getKey()).append(' ')
+				    .append(kilobytes(
+				        entry.getValue().getUsed() - before.getUsed()));
+			}
+		}
+		for (Map.Entry<String, Long> entry : snapshot.getBufferPoolMemoryUsed()
+		    .entrySet()) {
+			Long before = previous.getBufferPoolMemoryUsed().get(entry.getKey());
+			if (before != null) {
+				builder.append(", ").append(entry.getKey())
+				    .append(" buffers ")
+				    .append(kilobytes(entry.getValue() - before));
+			}
+		}
+	}
+
+	private static String kilobytes(long bytes) {
+		return String.format("%+d KB", bytes / 1024);
+	}
+
+}
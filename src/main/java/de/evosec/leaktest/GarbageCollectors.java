@@ -0,0 +1,22 @@
+package de.evosec.leaktest;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+final class GarbageCollectors {
+
+	// collectors that only ever collect the young generation and therefore
+	// never unload classes
+	private static final Set<String> YOUNG_COLLECTORS =
+	        new HashSet<>(Arrays.asList("Copy", "PS Scavenge", "ParNew",
+	            "G1 Young Generation", "ZGC Minor Cycles", "ZGC Minor Pauses"));
+
+	private GarbageCollectors() {
+	}
+
+	public static boolean canUnloadClasses(String collectorName) {
+		return !YOUNG_COLLECTORS.contains(collectorName);
+	}
+
+}
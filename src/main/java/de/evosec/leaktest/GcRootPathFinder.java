@@ -0,0 +1,94 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+
+import de.evosec.leaktest.IndexFile.IntArray;
+
+/**
+ * Breadth first search from all GC roots at once over an {@link ObjectIndex},
+ * so the first retained object reached has the shortest path.
+ */
+final class GcRootPathFinder {
+
+	private final HeapDump heapDump;
+	private final ObjectIndex index;
+
+	GcRootPathFinder(HeapDump heapDump, ObjectIndex index) {
+		this.heapDump = heapDump;
+		this.index = index;
+	}
+
+	/**
+	 * @param targets object id -> record offset of the retained objects
+	 * @return the shortest path to one of the targets or {@code null} if none
+	 *         of them is reachable
+	 */
+	public RetentionPath find(LongLongMap targets) throws IOException {
+		// index + 1 of the retained objects
+		LongLongMap targetIndexes = new LongLongMap(targets.size());
+		for (long target : targets.keys()) {
+			int targetIndex = index.indexOf(target);
+			if (targetIndex >= 0) {
+				targetIndexes.put(targetIndex + 1L, 1);
+			}
+		}
+		if (targetIndexes.isEmpty()) {
+			return null;
+		}
+
+		// index + 1 of the object the search came from, roots point to
+		// themselves and 0 marks objects that were not visited yet
+		IntArray parents = index.file().allocateInts(index.size());
+		IntArray queue = index.file().allocateInts(index.size());
+		int head = 0;
+		int tail = 0;
+		for (int root : index.roots()) {
+			if (parents.get(root) == 0) {
+				parents.set(root, root + 1);
+				queue.set(tail++, root);
+			}
+		}
+		while (head < tail) {
+			int object = queue.get(head++);
+			if (targetIndexes.containsKey(object + 1L)) {
+				return path(object, parents);
+			}
+			long end = index.edgeStart(object + 1);
+			for (long edge = index.edgeStart(object); edge < end; edge++) {
+				int target = index.edge(edge);
+				if (parents.get(target) == 0) {
+					parents.set(target, object + 1);
+					queue.set(tail++, target);
+				}
+			}
+		}
+		return null;
+	}
+
+	private RetentionPath path(int target, IntArray parents)
+	        throws IOException {
+		int length = 1;
+		for (int object = target; parents.get(object) != object + 1;
+		        object = parents.get(object) - 1) {
+			length++;
+		}
+		int[] objects = new int[length];
+		for (int i = length - 1, object = target; i >= 0;
+		        i--, object = parents.get(object) - 1) {
+			objects[i] = object;
+		}
+
+		long rootId = index.id(objects[0]);
+		RetentionPath path = new RetentionPath(heapDump.rootName(rootId),
+		    heapDump.describeObject(rootId, index.offset(objects[0])));
+		for (int i = 1; i < objects.length; i++) {
+			long objectId = index.id(objects[i]);
+			path.add(
+			    heapDump.describeReference(index.offset(objects[i - 1]),
+			        objectId),
+			    heapDump.describeObject(objectId, index.offset(objects[i])));
+		}
+		return path;
+	}
+
+}
@@ -0,0 +1,80 @@
+package de.evosec.leaktest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Forwards notifications of collections that can unload classes, young
+ * collections are filtered out.
+ */
+final class GcWatcher implements NotificationListener, AutoCloseable {
+
+	interface Callback {
+
+		void classUnloadingCollection(GarbageCollectionNotificationInfo info);
+
+	}
+
+	private static final NotificationFilter FILTER = new NotificationFilter() {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public boolean isNotificationEnabled(Notification notification) {
+			return GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+			    .equals(notification.getType());
+		}
+
+	};
+
+	private final Callback callback;
+	private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+	GcWatcher(Callback callback) {
+		this.callback = callback;
+	}
+
+	public void start() {
+		for (GarbageCollectorMXBean bean : ManagementFactory
+		    .getGarbageCollectorMXBeans()) {
+			if (bean instanceof NotificationEmitter
+			        && GarbageCollectors.canUnloadClasses(bean.getName())) {
+				NotificationEmitter emitter = (NotificationEmitter) bean;
+				emitter.addNotificationListener(this, FILTER, null);
+				emitters.add(emitter);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		for (NotificationEmitter emitter : emitters) {
+			try {
+				emitter.removeNotificationListener(this, FILTER, null);
+			} catch (ListenerNotFoundException e) {
+				// already removed
+			}
+		}
+		emitters.clear();
+	}
+
+	@Override
+	public void handleNotification(Notification notification,
+	        Object handback) {
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+		    .from((CompositeData) notification.getUserData());
+		callback.classUnloadingCollection(info);
+	}
+
+}
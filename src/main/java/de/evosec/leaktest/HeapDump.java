@@ -0,0 +1,761 @@
+package de.evosec.leaktest;
+
+import static de.evosec.leaktest.HprofTypes.CLASS_DUMP;
+import static de.evosec.leaktest.HprofTypes.INSTANCE_DUMP;
+import static de.evosec.leaktest.HprofTypes.OBJECT;
+import static de.evosec.leaktest.HprofTypes.OBJECT_ARRAY_DUMP;
+import static de.evosec.leaktest.HprofTypes.PRIMITIVE_ARRAY_DUMP;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Streaming view of a HPROF heap dump. Opening a dump reads it once to index
+ * strings, class dumps and GC roots, object records are only ever read
+ * sequentially through {@link #scan} or by their file offset.
+ * <p>
+ * The heap dump segments are split into chunks of about {@code chunkSize}
+ * bytes at sub record boundaries, so they can be scanned in parallel with
+ * {@link #forEachChunk}.
+ */
+final class HeapDump implements Closeable {
+
+	static final long DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	interface ChunkTask {
+
+		void run(int chunk) throws IOException;
+
+	}
+
+	abstract static class HeapVisitor {
+
+		/**
+		 * Called for every class, instance and array dump before its
+		 * references.
+		 *
+		 * @param classId the class of an instance or object array, {@code 0}
+		 *        for class dumps and primitive arrays
+		 * @param shallowSize estimated bytes of the object on the heap, see
+		 *        {@link HeapDump#shallowSize}
+		 */
+		void object(long objectId, int tag, long classId, long recordOffset,
+		        long shallowSize) throws IOException {
+		}
+
+		void reference(long objectId, long recordOffset, long targetId)
+		        throws IOException {
+		}
+
+	}
+
+	static final class ClassInfo {
+
+		final long id;
+		final long superId;
+		final long loaderId;
+		final long[] fieldNames;
+		final int[] fieldTypes;
+		int weakReferentField = -1;
+
+		ClassInfo(long id, long superId, long loaderId, long[] fieldNames,
+		        int[] fieldTypes) {
+			this.id = id;
+			this.superId = superId;
+			this.loaderId = loaderId;
+			this.fieldNames = fieldNames;
+			this.fieldTypes = fieldTypes;
+		}
+
+	}
+
+	private final FileChannel channel;
+	private final HprofReader reader;
+	private final int idSize;
+	// string id -> file offset of the UTF8 record body
+	private final LongLongMap strings = new LongLongMap(1 << 16);
+	// class object id -> class name string id
+	private final LongLongMap classNames = new LongLongMap(1 << 14);
+	private final Map<Long, ClassInfo> classes = new HashMap<>();
+	// object id -> root sub record tag
+	private final LongLongMap roots = new LongLongMap(1 << 12);
+	// start and end offset of the chunks
+	private final List<long[]> chunks = new ArrayList<>();
+	private final Map<Long, String> stringCache = new HashMap<>();
+	private final long chunkSize;
+	private final ForkJoinPool pool;
+
+	private HeapDump(FileChannel channel, long chunkSize, int parallelism)
+	        throws IOException {
+		this.channel = channel;
+		this.chunkSize = chunkSize;
+		HprofReader header = new HprofReader(channel, 4, 4096);
+		int b;
+		StringBuilder format = new StringBuilder();
+		while ((b = header.u1()) != 0) {
+			format.append((char) b);
+		}
+		if (!format.toString().startsWith("JAVA PROFILE 1.0")) {
+			throw new IOException("Not a HPROF heap dump: " + format);
+		}
+		idSize = header.u4();
+		header.u8();
+		reader = new HprofReader(channel, idSize,
+		    HprofReader.DEFAULT_WINDOW_SIZE);
+		reader.seek(header.position());
+		index();
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	static HeapDump open(Path file) throws IOException {
+		return open(file, DEFAULT_CHUNK_SIZE,
+		    Runtime.getRuntime().availableProcessors());
+	}
+
+	static HeapDump open(Path file, long chunkSize, int parallelism)
+	        throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new HeapDump(channel, chunkSize, parallelism);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a dump of all live objects of this JVM, {@code file} must not
+	 * exist and has to end with {@code .hprof}.
+	 */
+	static void write(Path file) throws IOException {
+		HotSpotDiagnosticMXBean bean = ManagementFactory
+		    .getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+		bean.dumpHeap(file.toAbsolutePath().toString(), true);
+	}
+
+	@Override
+	public void close() throws IOException {
+		pool.shutdown();
+		channel.close();
+	}
+
+	public int idSize() {
+		return idSize;
+	}
+
+	public boolean isRoot(long objectId) {
+		return roots.containsKey(objectId);
+	}
+
+	public long[] rootIds() {
+		return roots.keys();
+	}
+
+	public String rootName(long objectId) {
+		return HprofTypes.rootName((int) roots.get(objectId, 0));
+	}
+
+	public long[] classIds() {
+		long[] classIds = new long[classes.size()];
+		int i = 0;
+		for (long classId : classes.keySet()) {
+			classIds[i++] = classId;
+		}
+		return classIds;
+	}
+
+	public ClassInfo classInfo(long classId) {
+		return classes.get(classId);
+	}
+
+	public String className(long classId) throws IOException {
+		long nameId = classNames.get(classId, 0);
+		if (nameId == 0) {
+			return "unknown class@0x" + Long.toHexString(classId);
+		}
+		String name = string(nameId).replace('/', '.');
+		if (!name.startsWith("[")) {
+			return name;
+		}
+		int dimensions = name.lastIndexOf('[') + 1;
+		StringBuilder builder = new StringBuilder();
+		switch (name.charAt(dimensions)) {
+			case 'L':
+				builder.append(name, dimensions + 1, name.length() - 1);
+				break;
+			case 'Z':
+				builder.append("boolean");
+				break;
+			case 'C':
+				builder.append("char");
+				break;
+			case 'F':
+				builder.append("float");
+				break;
+			case 'D':
+				builder.append("double");
+				break;
+			case 'B':
+				builder.append("byte");
+				break;
+			case 'S':
+				builder.append("short");
+				break;
+			case 'I':
+				builder.append("int");
+				break;
+			default:
+				builder.append("long");
+				break;
+		}
+		for (int i = 0; i < dimensions; i++) {
+			builder.append("[]");
+		}
+		return builder.toString();
+	}
+
+	public boolean isSubclass(long classId, String className)
+	        throws IOException {
+		ClassInfo classInfo = classes.get(classId);
+		while (classInfo != null) {
+			if (className.equals(className(classInfo.id))) {
+				return true;
+			}
+			classInfo = classes.get(classInfo.superId);
+		}
+		return false;
+	}
+
+	public String string(long id) throws IOException {
+		String string = stringCache.get(id);
+		if (string == null) {
+			long offset = strings.get(id, -1);
+			if (offset < 0) {
+				return "unknown string@0x" + Long.toHexString(id);
+			}
+			reader.seek(offset - 4);
+			int length = reader.u4() - idSize;
+			reader.skip(idSize);
+			byte[] bytes = new byte[length];
+			reader.read(bytes);
+			string = new String(bytes, StandardCharsets.UTF_8);
+			stringCache.put(id, string);
+		}
+		return string;
+	}
+
+	/**
+	 * Estimates the heap bytes of an object from the dumped values: an object
+	 * header of two ids, four more bytes for the length of arrays and
+	 * alignment to eight bytes. Dumps of 64 bit JVMs use eight byte ids even
+	 * with compressed oops, so sizes tend to be too large rather than too
+	 * small.
+	 */
+	public long shallowSize(int tag, long valueBytes) {
+		long header = 2L * idSize;
+		if (tag == OBJECT_ARRAY_DUMP || tag == PRIMITIVE_ARRAY_DUMP) {
+			header += 4;
+		}
+		return (header + valueBytes + 7) & ~7L;
+	}
+
+	public int chunkCount() {
+		return chunks.size();
+	}
+
+	/**
+	 * Runs {@code task} for every chunk on the fork join pool of this heap
+	 * dump and waits for all of them to finish. Tasks may only use
+	 * {@link #scan}, {@link #classInfo} and {@link #isRoot}, the other
+	 * lookups share one reader.
+	 */
+	public void forEachChunk(ChunkTask task) throws IOException {
+		try {
+			pool.invoke(new ChunkAction(task, 0, chunks.size()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Reports every object and every strong reference in the chunk, weak, soft
+	 * and phantom referents are left out. Chunks are numbered in file order.
+	 */
+	public void scan(int chunk, HeapVisitor visitor) throws IOException {
+		HprofReader reader = newReader();
+		long[] bounds = chunks.get(chunk);
+		reader.seek(bounds[0]);
+		while (reader.position() < bounds[1]) {
+			long offset = reader.position();
+			int tag = reader.u1();
+			switch (tag) {
+				case CLASS_DUMP:
+					visitClassDump(reader, offset, visitor);
+					break;
+				case INSTANCE_DUMP:
+					visitInstance(reader, offset, visitor);
+					break;
+				case OBJECT_ARRAY_DUMP:
+					visitObjectArray(reader, offset, visitor);
+					break;
+				case PRIMITIVE_ARRAY_DUMP:
+					visitPrimitiveArray(reader, offset, visitor);
+					break;
+				default:
+					skipRecord(reader, tag);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Reads the object field {@code fieldName} of the instance dumped at
+	 * {@code recordOffset}.
+	 *
+	 * @return the referenced object id or {@code 0} for {@code null}
+	 */
+	public long objectField(long recordOffset, String fieldName)
+	        throws IOException {
+		reader.seek(recordOffset + 1);
+		reader.id();
+		reader.u4();
+		long classId = reader.id();
+		reader.u4();
+		ClassInfo classInfo = classes.get(classId);
+		while (classInfo != null) {
+			for (int i = 0; i < classInfo.fieldNames.length; i++) {
+				long value = reader.value(classInfo.fieldTypes[i]);
+				if (classInfo.fieldTypes[i] == OBJECT
+				        && fieldName.equals(string(classInfo.fieldNames[i]))) {
+					return value;
+				}
+			}
+			classInfo = classes.get(classInfo.superId);
+		}
+		throw new IllegalArgumentException("No field " + fieldName);
+	}
+
+	public String describeObject(long objectId, long recordOffset)
+	        throws IOException {
+		reader.seek(recordOffset);
+		int tag = reader.u1();
+		reader.id();
+		reader.u4();
+		String name;
+		switch (tag) {
+			case CLASS_DUMP:
+				name = "class " + className(objectId);
+				break;
+			case INSTANCE_DUMP:
+				name = className(reader.id());
+				break;
+			case OBJECT_ARRAY_DUMP:
+				reader.u4();
+				name = className(reader.id());
+				break;
+			case PRIMITIVE_ARRAY_DUMP:
+				reader.u4();
+				name = HprofTypes.primitiveArrayName(reader.u1());
+				break;
+			default:
+				name = "unknown";
+				break;
+		}
+		return name + "@0x" + Long.toHexString(objectId);
+	}
+
+	/**
+	 * Names the field, array element or class dump slot of the object dumped
+	 * at {@code recordOffset} that references {@code targetId}.
+	 */
+	public String describeReference(long recordOffset, final long targetId)
+	        throws IOException {
+		reader.seek(recordOffset);
+		int tag = reader.u1();
+		switch (tag) {
+			case CLASS_DUMP:
+				return describeClassDumpReference(targetId);
+			case INSTANCE_DUMP:
+				reader.id();
+				reader.u4();
+				long classId = reader.id();
+				reader.u4();
+				if (classId == targetId) {
+					return "<class>";
+				}
+				ClassInfo classInfo = classes.get(classId);
+				while (classInfo != null) {
+					for (int i = 0; i < classInfo.fieldNames.length; i++) {
+						long value = reader.value(classInfo.fieldTypes[i]);
+						if (classInfo.fieldTypes[i] == OBJECT
+						        && value == targetId) {
+							return "." + string(classInfo.fieldNames[i]);
+						}
+					}
+					classInfo = classes.get(classInfo.superId);
+				}
+				break;
+			case OBJECT_ARRAY_DUMP:
+				reader.id();
+				reader.u4();
+				int length = reader.u4();
+				if (reader.id() == targetId) {
+					return "<class>";
+				}
+				for (int i = 0; i < length; i++) {
+					if (reader.id() == targetId) {
+						return "[" + i + "]";
+					}
+				}
+				break;
+			default:
+				break;
+		}
+		return "?";
+	}
+
+	private String describeClassDumpReference(long targetId)
+	        throws IOException {
+		reader.id();
+		reader.u4();
+		String[] slots = { "<superclass>", "<classloader>", "<signers>",
+		    "<protection domain>" };
+		for (String slot : slots) {
+			if (reader.id() == targetId) {
+				return slot;
+			}
+		}
+		reader.id();
+		reader.id();
+		reader.u4();
+		int constants = reader.u2();
+		for (int i = 0; i < constants; i++) {
+			reader.u2();
+			int type = reader.u1();
+			if (reader.value(type) == targetId && type == OBJECT) {
+				return "<constant pool>";
+			}
+		}
+		int statics = reader.u2();
+		for (int i = 0; i < statics; i++) {
+			long name = reader.id();
+			int type = reader.u1();
+			if (reader.value(type) == targetId && type == OBJECT) {
+				return "static " + string(name);
+			}
+		}
+		return "?";
+	}
+
+	private HprofReader newReader() throws IOException {
+		return new HprofReader(channel, idSize,
+		    HprofReader.DEFAULT_WINDOW_SIZE);
+	}
+
+	private void visitClassDump(HprofReader reader, long offset,
+	        HeapVisitor visitor) throws IOException {
+		long classId = reader.id();
+		reader.u4();
+		visitor.object(classId, CLASS_DUMP, 0, offset,
+		    shallowSize(CLASS_DUMP, staticBytes(reader)));
+		for (int i = 0; i < 4; i++) {
+			// super class, class loader, signers and protection domain
+			visit(visitor, classId, offset, reader.id());
+		}
+		reader.id();
+		reader.id();
+		reader.u4();
+		int constants = reader.u2();
+		for (int i = 0; i < constants; i++) {
+			reader.u2();
+			int type = reader.u1();
+			long value = reader.value(type);
+			if (type == OBJECT) {
+				visit(visitor, classId, offset, value);
+			}
+		}
+		int statics = reader.u2();
+		for (int i = 0; i < statics; i++) {
+			reader.id();
+			int type = reader.u1();
+			long value = reader.value(type);
+			if (type == OBJECT) {
+				visit(visitor, classId, offset, value);
+			}
+		}
+		int fields = reader.u2();
+		reader.skip(fields * (long) (idSize + 1));
+	}
+
+	/**
+	 * Sums the static field values of the class dump the reader is positioned
+	 * in after the class id and stack trace serial, without moving the reader.
+	 */
+	private long staticBytes(HprofReader reader) throws IOException {
+		long position = reader.position();
+		reader.skip(6L * idSize + 4);
+		int constants = reader.u2();
+		for (int i = 0; i < constants; i++) {
+			reader.u2();
+			reader.skip(HprofTypes.size(reader.u1(), idSize));
+		}
+		long bytes = 0;
+		int statics = reader.u2();
+		for (int i = 0; i < statics; i++) {
+			reader.id();
+			int size = HprofTypes.size(reader.u1(), idSize);
+			reader.skip(size);
+			bytes += size;
+		}
+		reader.seek(position);
+		return bytes;
+	}
+
+	private void visitInstance(HprofReader reader, long offset,
+	        HeapVisitor visitor) throws IOException {
+		long objectId = reader.id();
+		reader.u4();
+		long classId = reader.id();
+		long length = reader.u4() & 0xFFFFFFFFL;
+		long end = reader.position() + length;
+		visitor.object(objectId, INSTANCE_DUMP, classId, offset,
+		    shallowSize(INSTANCE_DUMP, length));
+		visit(visitor, objectId, offset, classId);
+		ClassInfo classInfo = classes.get(classId);
+		while (classInfo != null && reader.position() < end) {
+			for (int i = 0; i < classInfo.fieldNames.length; i++) {
+				long value = reader.value(classInfo.fieldTypes[i]);
+				if (classInfo.fieldTypes[i] == OBJECT
+				        && i != classInfo.weakReferentField) {
+					visit(visitor, objectId, offset, value);
+				}
+			}
+			classInfo = classes.get(classInfo.superId);
+		}
+		reader.seek(end);
+	}
+
+	private void visitObjectArray(HprofReader reader, long offset,
+	        HeapVisitor visitor) throws IOException {
+		long objectId = reader.id();
+		reader.u4();
+		int length = reader.u4();
+		long classId = reader.id();
+		visitor.object(objectId, OBJECT_ARRAY_DUMP, classId, offset,
+		    shallowSize(OBJECT_ARRAY_DUMP, (length & 0xFFFFFFFFL) * idSize));
+		visit(visitor, objectId, offset, classId);
+		for (int i = 0; i < length; i++) {
+			visit(visitor, objectId, offset, reader.id());
+		}
+	}
+
+	private void visitPrimitiveArray(HprofReader reader, long offset,
+	        HeapVisitor visitor) throws IOException {
+		long objectId = reader.id();
+		reader.u4();
+		long length = reader.u4() & 0xFFFFFFFFL;
+		int type = reader.u1();
+		long bytes = length * HprofTypes.size(type, idSize);
+		visitor.object(objectId, PRIMITIVE_ARRAY_DUMP, 0, offset,
+		    shallowSize(PRIMITIVE_ARRAY_DUMP, bytes));
+		reader.skip(bytes);
+	}
+
+	private static void visit(HeapVisitor visitor, long objectId,
+	        long offset, long targetId) throws IOException {
+		if (targetId != 0) {
+			visitor.reference(objectId, offset, targetId);
+		}
+	}
+
+	private void index() throws IOException {
+		while (reader.hasRemaining()) {
+			int tag = reader.u1();
+			reader.u4();
+			long length = reader.u4() & 0xFFFFFFFFL;
+			long body = reader.position();
+			switch (tag) {
+				case HprofTypes.UTF8:
+					strings.put(reader.id(), body);
+					break;
+				case HprofTypes.LOAD_CLASS:
+					reader.u4();
+					long classId = reader.id();
+					reader.u4();
+					classNames.put(classId, reader.id());
+					break;
+				case HprofTypes.HEAP_DUMP:
+				case HprofTypes.HEAP_DUMP_SEGMENT:
+					indexSegment(body + length);
+					break;
+				default:
+					break;
+			}
+			reader.seek(body + length);
+		}
+		markWeakReferents();
+	}
+
+	private void indexSegment(long end) throws IOException {
+		long chunkStart = reader.position();
+		while (reader.position() < end) {
+			if (reader.position() - chunkStart >= chunkSize) {
+				chunks.add(new long[] { chunkStart, reader.position() });
+				chunkStart = reader.position();
+			}
+			int tag = reader.u1();
+			if (tag == CLASS_DUMP) {
+				ClassInfo classInfo = readClassDump(reader);
+				classes.put(classInfo.id, classInfo);
+			} else if (tag == INSTANCE_DUMP || tag == OBJECT_ARRAY_DUMP
+			        || tag == PRIMITIVE_ARRAY_DUMP) {
+				skipRecord(reader, tag);
+			} else {
+				long objectId = reader.id();
+				if (!roots.containsKey(objectId)) {
+					roots.put(objectId, tag);
+				}
+				skipRoot(reader, tag);
+			}
+		}
+		if (chunkStart < end) {
+			chunks.add(new long[] { chunkStart, end });
+		}
+	}
+
+	private ClassInfo readClassDump(HprofReader reader) throws IOException {
+		long classId = reader.id();
+		reader.u4();
+		long superId = reader.id();
+		long loaderId = reader.id();
+		reader.skip(4L * idSize + 4);
+		int constants = reader.u2();
+		for (int i = 0; i < constants; i++) {
+			reader.u2();
+			reader.skip(HprofTypes.size(reader.u1(), idSize));
+		}
+		int statics = reader.u2();
+		for (int i = 0; i < statics; i++) {
+			reader.id();
+			reader.skip(HprofTypes.size(reader.u1(), idSize));
+		}
+		int fields = reader.u2();
+		long[] fieldNames = new long[fields];
+		int[] fieldTypes = new int[fields];
+		for (int i = 0; i < fields; i++) {
+			fieldNames[i] = reader.id();
+			fieldTypes[i] = reader.u1();
+		}
+		return new ClassInfo(classId, superId, loaderId, fieldNames,
+		    fieldTypes);
+	}
+
+	private void markWeakReferents() throws IOException {
+		for (ClassInfo classInfo : classes.values()) {
+			if ("java.lang.ref.Reference".equals(className(classInfo.id))) {
+				for (int i = 0; i < classInfo.fieldNames.length; i++) {
+					if ("referent".equals(string(classInfo.fieldNames[i]))) {
+						classInfo.weakReferentField = i;
+					}
+				}
+			}
+		}
+	}
+
+	private void skipRecord(HprofReader reader, int tag) throws IOException {
+		switch (tag) {
+			case CLASS_DUMP:
+				readClassDump(reader);
+				break;
+			case INSTANCE_DUMP:
+				reader.skip(idSize + 4L + idSize);
+				reader.skip(reader.u4() & 0xFFFFFFFFL);
+				break;
+			case OBJECT_ARRAY_DUMP:
+				reader.skip(idSize + 4L);
+				long elements = reader.u4() & 0xFFFFFFFFL;
+				reader.skip(idSize + elements * idSize);
+				break;
+			case PRIMITIVE_ARRAY_DUMP:
+				reader.skip(idSize + 4L);
+				long length = reader.u4() & 0xFFFFFFFFL;
+				reader.skip(length * HprofTypes.size(reader.u1(), idSize));
+				break;
+			default:
+				reader.id();
+				skipRoot(reader, tag);
+				break;
+		}
+	}
+
+	private void skipRoot(HprofReader reader, int tag) throws IOException {
+		switch (tag) {
+			case HprofTypes.ROOT_UNKNOWN:
+			case HprofTypes.ROOT_STICKY_CLASS:
+			case HprofTypes.ROOT_MONITOR_USED:
+				break;
+			case HprofTypes.ROOT_JNI_GLOBAL:
+				reader.skip(idSize);
+				break;
+			case HprofTypes.ROOT_NATIVE_STACK:
+			case HprofTypes.ROOT_THREAD_BLOCK:
+				reader.skip(4);
+				break;
+			case HprofTypes.ROOT_JNI_LOCAL:
+			case HprofTypes.ROOT_JAVA_FRAME:
+			case HprofTypes.ROOT_THREAD_OBJECT:
+				reader.skip(8);
+				break;
+			default:
+				throw new IOException("Unknown heap dump sub record 0x"
+				        + Integer.toHexString(tag) + " at "
+				        + (reader.position() - 1 - idSize));
+		}
+	}
+
+	private static final class ChunkAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ChunkTask task;
+		private final int from;
+		private final int to;
+
+		ChunkAction(ChunkTask task, int from, int to) {
+			this.task = task;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ChunkAction(task, from, middle),
+				    new ChunkAction(task, middle, to));
+			} else if (to > from) {
+				try {
+					task.run(from);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+	}
+
+}
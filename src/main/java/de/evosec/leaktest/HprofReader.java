@@ -0,0 +1,134 @@
+package de.evosec.leaktest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Sequential big-endian reader over a memory mapped window of a heap dump.
+ * Only one window of at most {@code windowSize} bytes is mapped at a time, so
+ * reading a dump of any size needs a fixed amount of address space.
+ */
+final class HprofReader {
+
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+	private final int idSize;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long position;
+
+	HprofReader(FileChannel channel, int idSize, int windowSize)
+	        throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+		this.idSize = idSize;
+		this.windowSize = windowSize;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public int idSize() {
+		return idSize;
+	}
+
+	public long position() {
+		return position;
+	}
+
+	public void seek(long position) {
+		this.position = position;
+	}
+
+	public boolean hasRemaining() {
+		return position < size;
+	}
+
+	public void skip(long bytes) {
+		position += bytes;
+	}
+
+	public int u1() throws IOException {
+		ensure(1);
+		return window.get((int) (position++ - windowStart)) & 0xFF;
+	}
+
+	public int u2() throws IOException {
+		ensure(2);
+		int value = window.getShort((int) (position - windowStart)) & 0xFFFF;
+		position += 2;
+		return value;
+	}
+
+	public int u4() throws IOException {
+		ensure(4);
+		int value = window.getInt((int) (position - windowStart));
+		position += 4;
+		return value;
+	}
+
+	public long u8() throws IOException {
+		ensure(8);
+		long value = window.getLong((int) (position - windowStart));
+		position += 8;
+		return value;
+	}
+
+	public long id() throws IOException {
+		return idSize == 4 ? u4() & 0xFFFFFFFFL : u8();
+	}
+
+	public void read(byte[] bytes) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			ensure(1);
+			int count = (int) Math.min(bytes.length - offset,
+			    windowStart + window.limit() - position);
+			for (int i = 0; i < count; i++) {
+				bytes[offset + i] =
+				        window.get((int) (position - windowStart) + i);
+			}
+			offset += count;
+			position += count;
+		}
+	}
+
+	/**
+	 * Reads a value of the given basic type, object ids and all primitives
+	 * are returned as their raw bits.
+	 */
+	public long value(int type) throws IOException {
+		switch (HprofTypes.size(type, idSize)) {
+			case 1:
+				return u1();
+			case 2:
+				return u2();
+			case 4:
+				return type == HprofTypes.OBJECT ? id() : u4();
+			default:
+				return type == HprofTypes.OBJECT ? id() : u8();
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (window != null && position >= windowStart
+		        && position + bytes <= windowStart + window.limit()) {
+			return;
+		}
+		if (position + bytes > size) {
+			throw new EOFException("Unexpected end of heap dump at " + position);
+		}
+		windowStart = position;
+		window = channel.map(MapMode.READ_ONLY, windowStart,
+		    Math.min(windowSize, size - windowStart));
+	}
+
+}
@@ -0,0 +1,105 @@
+package de.evosec.leaktest;
+
+final class HprofTypes {
+
+	// top level record tags
+	static final int UTF8 = 0x01;
+	static final int LOAD_CLASS = 0x02;
+	static final int HEAP_DUMP = 0x0C;
+	static final int HEAP_DUMP_SEGMENT = 0x1C;
+
+	// heap dump sub record tags
+	static final int ROOT_UNKNOWN = 0xFF;
+	static final int ROOT_JNI_GLOBAL = 0x01;
+	static final int ROOT_JNI_LOCAL = 0x02;
+	static final int ROOT_JAVA_FRAME = 0x03;
+	static final int ROOT_NATIVE_STACK = 0x04;
+	static final int ROOT_STICKY_CLASS = 0x05;
+	static final int ROOT_THREAD_BLOCK = 0x06;
+	static final int ROOT_MONITOR_USED = 0x07;
+	static final int ROOT_THREAD_OBJECT = 0x08;
+	static final int CLASS_DUMP = 0x20;
+	static final int INSTANCE_DUMP = 0x21;
+	static final int OBJECT_ARRAY_DUMP = 0x22;
+	static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+
+	// basic types
+	static final int OBJECT = 2;
+	static final int BOOLEAN = 4;
+	static final int CHAR = 5;
+	static final int FLOAT = 6;
+	static final int DOUBLE = 7;
+	static final int BYTE = 8;
+	static final int SHORT = 9;
+	static final int INT = 10;
+	static final int LONG = 11;
+
+	private HprofTypes() {
+	}
+
+	static int size(int type, int idSize) {
+		switch (type) {
+			case OBJECT:
+				return idSize;
+			case BOOLEAN:
+			case BYTE:
+				return 1;
+			case CHAR:
+			case SHORT:
+				return 2;
+			case FLOAT:
+			case INT:
+				return 4;
+			case DOUBLE:
+			case LONG:
+				return 8;
+			default:
+				throw new IllegalArgumentException("Unknown basic type " + type);
+		}
+	}
+
+	static String rootName(int tag) {
+		switch (tag) {
+			case ROOT_JNI_GLOBAL:
+				return "JNI global";
+			case ROOT_JNI_LOCAL:
+				return "JNI local";
+			case ROOT_JAVA_FRAME:
+				return "Java frame";
+			case ROOT_NATIVE_STACK:
+				return "native stack";
+			case ROOT_STICKY_CLASS:
+				return "system class";
+			case ROOT_THREAD_BLOCK:
+				return "thread block";
+			case ROOT_MONITOR_USED:
+				return "busy monitor";
+			case ROOT_THREAD_OBJECT:
+				return "thread";
+			default:
+				return "unknown";
+		}
+	}
+
+	static String primitiveArrayName(int type) {
+		switch (type) {
+			case BOOLEAN:
+				return "boolean[]";
+			case CHAR:
+				return "char[]";
+			case FLOAT:
+				return "float[]";
+			case DOUBLE:
+				return "double[]";
+			case BYTE:
+				return "byte[]";
+			case SHORT:
+				return "short[]";
+			case INT:
+				return "int[]";
+			default:
+				return "long[]";
+		}
+	}
+
+}
@@ -0,0 +1,372 @@
+package de.evosec.leaktest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal HTTP/1.1 client for probing the deployed web application. It keeps
+ * one connection alive across requests, drains every response body so the
+ * connection can be reused and allocates its buffers once. Unlike
+ * {@link java.net.HttpURLConnection} it starts no keep-alive thread and
+ * caches nothing in the JDK, which could otherwise pin the class loader under
+ * test.
+ * <p>
+ * Instances are not thread safe.
+ */
+final class HttpProbeClient implements AutoCloseable {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte[] STATUS_LINE = ascii("http/1.");
+	private static final byte[] CONTENT_LENGTH = ascii("content-length:");
+	private static final byte[] TRANSFER_ENCODING =
+	        ascii("transfer-encoding:");
+	private static final byte[] CONNECTION = ascii("connection:");
+	private static final byte[] CHUNKED = ascii("chunked");
+	private static final byte[] CLOSE = ascii("close");
+
+	private final InetSocketAddress address;
+	private final String requestTail;
+	private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final byte[] line = new byte[BUFFER_SIZE];
+	private int lineLength;
+
+	private Selector selector;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private int connections = 0;
+
+	HttpProbeClient(String host, int port) {
+		this.address = new InetSocketAddress(host, port);
+		this.requestTail = " HTTP/1.1\r\nHost: " + host + ":" + port
+		        + "\r\nConnection: keep-alive\r\n";
+		in.limit(0);
+	}
+
+	/**
+	 * Sends a GET request and reads the whole response.
+	 *
+	 * @return the status code of the response
+	 */
+	int get(String path, long timeout, TimeUnit unit) throws IOException {
+		return request("GET", path, timeout, unit);
+	}
+
+	/**
+	 * Sends a request without a body and reads the whole response.
+	 *
+	 * @param target the path and query of the request
+	 * @return the status code of the response
+	 */
+	int request(String method, String target, long timeout, TimeUnit unit)
+	        throws IOException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean reused = channel != null;
+		try {
+			return exchange(method, target, deadline);
+		} catch (SocketTimeoutException e) {
+			closeChannel();
+			throw e;
+		} catch (IOException e) {
+			closeChannel();
+			if (!reused || "POST".equals(method) || "PATCH".equals(method)) {
+				throw e;
+			}
+			// the server closed the idle connection, idempotent requests can
+			// be repeated
+			return exchange(method, target, deadline);
+		}
+	}
+
+	/**
+	 * @return the number of connections opened so far
+	 */
+	int getConnections() {
+		return connections;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closeChannel();
+		if (selector != null) {
+			selector.close();
+			selector = null;
+		}
+	}
+
+	private int exchange(String method, String target, long deadline)
+	        throws IOException {
+		connect(deadline);
+		writeRequest(method, target, deadline);
+
+		readLine(deadline);
+		if (lineLength < 12 || !startsWith(STATUS_LINE, 0)) {
+			throw new IOException("Malformed status line");
+		}
+		boolean keepAlive = line[7] == '1';
+		int status = parseDecimal(9, 12);
+
+		long contentLength = -1;
+		boolean chunked = false;
+		while (readLine(deadline) > 0) {
+			if (startsWith(CONTENT_LENGTH, 0)) {
+				contentLength =
+				        parseDecimal(skipSpaces(CONTENT_LENGTH.length),
+				            trimSpaces(lineLength));
+			} else if (startsWith(TRANSFER_ENCODING, 0)) {
+				chunked = contains(CHUNKED, TRANSFER_ENCODING.length);
+			} else if (startsWith(CONNECTION, 0)) {
+				keepAlive = !contains(CLOSE, CONNECTION.length);
+			}
+		}
+
+		if ("HEAD".equals(method) || status / 100 == 1 || status == 204
+		        || status == 304) {
+			// no body
+		} else if (chunked) {
+			long chunkSize;
+			do {
+				readLine(deadline);
+				chunkSize = parseHex();
+				skip(chunkSize, deadline);
+				readLine(deadline);
+			} while (chunkSize > 0);
+			// trailers end with the empty line read last, unless there are
+			// some
+			while (lineLength > 0) {
+				readLine(deadline);
+			}
+		} else if (contentLength >= 0) {
+			skip(contentLength, deadline);
+		} else {
+			// the body ends with the connection
+			skip(Long.MAX_VALUE, deadline);
+			keepAlive = false;
+		}
+
+		if (!keepAlive || in.hasRemaining()) {
+			closeChannel();
+		}
+		return status;
+	}
+
+	private void connect(long deadline) throws IOException {
+		if (channel != null) {
+			return;
+		}
+		if (selector == null) {
+			selector = Selector.open();
+		}
+		channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		key = channel.register(selector, SelectionKey.OP_CONNECT);
+		connections++;
+		if (!channel.connect(address)) {
+			while (!channel.finishConnect()) {
+				select(SelectionKey.OP_CONNECT, deadline);
+			}
+		}
+	}
+
+	private void writeRequest(String method, String target, long deadline)
+	        throws IOException {
+		out.clear();
+		put(method);
+		put(" ");
+		put(target);
+		put(requestTail);
+		if ("GET".equals(method) || "HEAD".equals(method)) {
+			put("\r\n");
+		} else {
+			put("Content-Length: 0\r\n\r\n");
+		}
+		out.flip();
+		while (out.hasRemaining()) {
+			if (channel.write(out) == 0) {
+				select(SelectionKey.OP_WRITE, deadline);
+			}
+		}
+	}
+
+	private void put(String value) throws IOException {
+		if (value.length() > out.remaining()) {
+			throw new IOException("Request too long");
+		}
+		for (int i = 0; i < value.length(); i++) {
+			out.put((byte) value.charAt(i));
+		}
+	}
+
+	/**
+	 * Reads up to the next line feed into {@link #line} without the line
+	 * ending.
+	 *
+	 * @return the length of the line
+	 */
+	private int readLine(long deadline) throws IOException {
+		lineLength = 0;
+		while (true) {
+			if (!in.hasRemaining()) {
+				fill(deadline);
+			}
+			byte b = in.get();
+			if (b == '\n') {
+				if (lineLength > 0 && line[lineLength - 1] == '\r') {
+					lineLength--;
+				}
+				return lineLength;
+			}
+			if (lineLength == line.length) {
+				throw new IOException("Line too long");
+			}
+			line[lineLength++] = b;
+		}
+	}
+
+	/**
+	 * Discards {@code count} bytes of the response or everything up to the end
+	 * of the stream if the connection is closed first and {@code count} is
+	 * {@link Long#MAX_VALUE}.
+	 */
+	private void skip(long count, long deadline) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			if (!in.hasRemaining()) {
+				try {
+					fill(deadline);
+				} catch (EOFException e) {
+					if (count == Long.MAX_VALUE) {
+						return;
+					}
+					throw e;
+				}
+			}
+			int skipped = (int) Math.min(remaining, in.remaining());
+			in.position(in.position() + skipped);
+			remaining -= skipped;
+		}
+	}
+
+	private void fill(long deadline) throws IOException {
+		in.clear();
+		int read;
+		while ((read = channel.read(in)) == 0) {
+			select(SelectionKey.OP_READ, deadline);
+		}
+		in.flip();
+		if (read < 0) {
+			throw new EOFException("Connection closed by server");
+		}
+	}
+
+	private void select(int operation, long deadline) throws IOException {
+		long remaining =
+		        TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		if (remaining <= 0) {
+			throw new SocketTimeoutException(
+			    "Timed out waiting for " + address);
+		}
+		key.interestOps(operation);
+		selector.select(remaining);
+		selector.selectedKeys().clear();
+	}
+
+	private void closeChannel() throws IOException {
+		if (channel != null) {
+			key.cancel();
+			channel.close();
+			channel = null;
+			key = null;
+			// flushes the cancelled key, so the next channel can register
+			selector.selectNow();
+		}
+		in.clear();
+		in.limit(0);
+	}
+
+	private boolean startsWith(byte[] prefix, int offset) {
+		if (lineLength - offset < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (Character.toLowerCase(line[offset + i]) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean contains(byte[] value, int offset) {
+		for (int i = offset; i <= lineLength - value.length; i++) {
+			if (startsWith(value, i)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int skipSpaces(int offset) {
+		int i = offset;
+		while (i < lineLength && (line[i] == ' ' || line[i] == '\t')) {
+			i++;
+		}
+		return i;
+	}
+
+	private int trimSpaces(int end) {
+		int i = end;
+		while (i > 0 && (line[i - 1] == ' ' || line[i - 1] == '\t')) {
+			i--;
+		}
+		return i;
+	}
+
+	private int parseDecimal(int from, int to) throws IOException {
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			if (line[i] < '0' || line[i] > '9') {
+				throw new IOException("Malformed number in response");
+			}
+			value = value * 10 + line[i] - '0';
+			if (value > Integer.MAX_VALUE) {
+				throw new IOException("Number too large in response");
+			}
+		}
+		return (int) value;
+	}
+
+	private long parseHex() throws IOException {
+		long value = 0;
+		int digits = 0;
+		for (int i = 0; i < lineLength; i++) {
+			int digit = Character.digit(line[i], 16);
+			if (digit < 0) {
+				// chunk extensions
+				break;
+			}
+			value = value * 16 + digit;
+			digits++;
+		}
+		if (digits == 0 || digits > 15) {
+			throw new IOException("Malformed chunk size");
+		}
+		return value;
+	}
+
+	private static byte[] ascii(String value) {
+		byte[] bytes = new byte[value.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) value.charAt(i);
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,104 @@
+package de.evosec.leaktest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temporary file that backs memory mapped primitive arrays, so large indexes
+ * live in the page cache instead of the Java heap.
+ */
+final class IndexFile implements Closeable {
+
+	// 1 GB per mapping, a single MappedByteBuffer is limited to 2 GB
+	static final int PAGE_SHIFT = 30;
+
+	private final Path file;
+	private final FileChannel channel;
+	private long size = 0;
+
+	IndexFile(Path directory) throws IOException {
+		file = Files.createTempFile(directory, "hprof-index", ".tmp");
+		channel = FileChannel.open(file, StandardOpenOption.READ,
+		    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+	}
+
+	public LongArray allocateLongs(long length) throws IOException {
+		return new LongArray(map(length << 3));
+	}
+
+	public IntArray allocateInts(long length) throws IOException {
+		return new IntArray(map(length << 2));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		Files.deleteIfExists(file);
+	}
+
+	private synchronized MappedByteBuffer[] map(long bytes)
+	        throws IOException {
+		int pages = (int) ((bytes + (1L << PAGE_SHIFT) - 1) >>> PAGE_SHIFT);
+		MappedByteBuffer[] buffers = new MappedByteBuffer[Math.max(1, pages)];
+		for (int i = 0; i < buffers.length; i++) {
+			long pageSize = Math.min(1L << PAGE_SHIFT,
+			    bytes - ((long) i << PAGE_SHIFT));
+			buffers[i] = channel.map(MapMode.READ_WRITE, size, pageSize);
+			size += pageSize;
+		}
+		return buffers;
+	}
+
+	static final class LongArray {
+
+		private static final int SHIFT = PAGE_SHIFT - 3;
+		private static final long MASK = (1L << SHIFT) - 1;
+
+		private final MappedByteBuffer[] pages;
+
+		LongArray(MappedByteBuffer[] pages) {
+			this.pages = pages;
+		}
+
+		public long get(long index) {
+			return pages[(int) (index >>> SHIFT)]
+			    .getLong((int) (index & MASK) << 3);
+		}
+
+		public void set(long index, long value) {
+			pages[(int) (index >>> SHIFT)].putLong((int) (index & MASK) << 3,
+			    value);
+		}
+
+	}
+
+	static final class IntArray {
+
+		private static final int SHIFT = PAGE_SHIFT - 2;
+		private static final long MASK = (1L << SHIFT) - 1;
+
+		private final MappedByteBuffer[] pages;
+
+		IntArray(MappedByteBuffer[] pages) {
+			this.pages = pages;
+		}
+
+		public int get(long index) {
+			return pages[(int) (index >>> SHIFT)]
+			    .getInt((int) (index & MASK) << 2);
+		}
+
+		public void set(long index, int value) {
+			pages[(int) (index >>> SHIFT)].putInt((int) (index & MASK) << 2,
+			    value);
+		}
+
+	}
+
+}
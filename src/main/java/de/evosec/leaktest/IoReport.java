@@ -0,0 +1,122 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File system work of one {@link WebAppTest} run and where it happened, to
+ * compare a RAM-backed base directory with one on disk.
+ */
+public final class IoReport {
+
+	private Path baseDirectory;
+	private boolean ramBacked;
+	private long unpackNanos;
+	private long workFiles;
+	private long workBytes;
+	private long undeployNanos;
+	private long teardownNanos;
+
+	void baseDirectory(Path baseDirectory) {
+		this.baseDirectory = baseDirectory;
+		this.ramBacked = BaseDirectories.isRamBacked(baseDirectory);
+	}
+
+	void unpack(long nanos) {
+		unpackNanos = nanos;
+	}
+
+	/**
+	 * Records the size of the Jasper work directory before undeploying.
+	 */
+	void workDirectory(Path workDirectory) {
+		workFiles = 0;
+		workBytes = 0;
+		if (workDirectory == null || !Files.isDirectory(workDirectory)) {
+			return;
+		}
+		try {
+			Files.walkFileTree(workDirectory, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(Path file,
+				        BasicFileAttributes attrs) {
+					workFiles++;
+					workBytes += attrs.size();
+					return FileVisitResult.CONTINUE;
+				}
+
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	void undeploy(long nanos) {
+		undeployNanos = nanos;
+	}
+
+	void teardown(long nanos) {
+		teardownNanos = nanos;
+	}
+
+	public Path getBaseDirectory() {
+		return baseDirectory;
+	}
+
+	public boolean isRamBacked() {
+		return ramBacked;
+	}
+
+	/**
+	 * @return the time spent unpacking the WAR, close to {@code 0} when it was
+	 *         served from the unpack cache
+	 */
+	public long getUnpackTime(TimeUnit unit) {
+		return unit.convert(unpackNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the number of compiled JSPs and other work files of the context
+	 */
+	public long getWorkFiles() {
+		return workFiles;
+	}
+
+	public long getWorkBytes() {
+		return workBytes;
+	}
+
+	/**
+	 * @return the time spent removing the context, which includes persisting
+	 *         its sessions and deleting its work directory
+	 */
+	public long getUndeployTime(TimeUnit unit) {
+		return unit.convert(undeployNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the time spent discarding the base directory or the expanded
+	 *         WAR after the run
+	 */
+	public long getTeardownTime(TimeUnit unit) {
+		return unit.convert(teardownNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+		    "%s (%s): unpack %d ms, %d work files with %d KB, undeploy %d ms, "
+		            + "teardown %d ms",
+		    baseDirectory, ramBacked ? "RAM" : "disk",
+		    getUnpackTime(TimeUnit.MILLISECONDS), workFiles, workBytes / 1024,
+		    getUndeployTime(TimeUnit.MILLISECONDS),
+		    getTeardownTime(TimeUnit.MILLISECONDS));
+	}
+
+}
@@ -0,0 +1,162 @@
+package de.evosec.leaktest;
+
+import java.lang.management.MemoryUsage;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+final class LeakDetector implements GcWatcher.Callback {
+
+	// GC notifications are delivered asynchronously and may arrive after the
+	// reference has been enqueued
+	private static final long ATTRIBUTION_TIMEOUT_MILLIS = 1000;
+	private static final String LAST_DITCH_COLLECTION =
+	        "Last ditch collection";
+
+	private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+	private final Reference<ClassLoader> reference;
+	// enqueued explicitly to wake up awaitVerdict once the leak is proven
+	private final Reference<ClassLoader> wakeUp =
+	        new WeakReference<>(null, queue);
+	private final int proofCollections;
+	private final CountDownLatch attributed = new CountDownLatch(1);
+	private final Map<String, Integer> collectionsByCollector =
+	        new LinkedHashMap<>();
+
+	private volatile boolean collected = false;
+	private volatile boolean proven = false;
+	private int classUnloadingCollections = 0;
+	private int collectionsAtCap = 0;
+	private long metaspaceMax = -1;
+	// when the deciding collection was reported, awaitVerdict may only look
+	// at this detector long after that when several are awaited
+	private long verdictNanos = 0;
+	private String collectorName;
+	private String gcCause;
+
+	/**
+	 * @param proofCollections number of class unloading collections with
+	 *        Metaspace at its cap the class loader has to survive to be
+	 *        reported as leaked before the timeout, {@code 0} to always wait
+	 *        for the timeout
+	 */
+	LeakDetector(ClassLoader classLoader, int proofCollections) {
+		this.reference = new WeakReference<>(classLoader, queue);
+		this.proofCollections = proofCollections;
+	}
+
+	public boolean isCollected() {
+		return collected || reference.get() == null;
+	}
+
+	@Override
+	public synchronized void classUnloadingCollection(
+	        GarbageCollectionNotificationInfo info) {
+		if (collectorName != null || proven) {
+			return;
+		}
+		classUnloadingCollections++;
+		Integer count = collectionsByCollector.get(info.getGcName());
+		collectionsByCollector.put(info.getGcName(),
+		    count == null ? 1 : count + 1);
+		if (reference.get() == null) {
+			collectorName = info.getGcName();
+			gcCause = info.getGcCause();
+			verdictNanos = System.nanoTime();
+			attributed.countDown();
+			return;
+		}
+		MemoryUsage metaspace =
+		        info.getGcInfo().getMemoryUsageBeforeGc().get("Metaspace");
+		// the JVM cannot commit any more Metaspace, so this collection had
+		// to unload every class it could, clearing soft references if needed.
+		// Committed Metaspace can stop a few KB short of the cap, but a last
+		// ditch collection is only run once an allocation failed there.
+		if (metaspace != null && metaspace.getMax() > 0
+		        && (metaspace.getCommitted() >= metaspace.getMax()
+		                || LAST_DITCH_COLLECTION.equals(info.getGcCause()))) {
+			collectionsAtCap++;
+			metaspaceMax = metaspace.getMax();
+			if (proofCollections > 0 && collectionsAtCap >= proofCollections) {
+				proven = true;
+				verdictNanos = System.nanoTime();
+				wakeUp.enqueue();
+			}
+		}
+	}
+
+	/**
+	 * Starts {@code pressure} and waits for the verdicts of all detectors
+	 * during this one phase of class unloading collections. The pressure is
+	 * left running, it has to be closed by the caller.
+	 *
+	 * @return the verdicts in the order of the detectors
+	 */
+	static List<LeakVerdict> awaitVerdicts(final List<LeakDetector> detectors,
+	        MetaspacePressure pressure, long timeout, TimeUnit unit)
+	        throws InterruptedException {
+		List<LeakVerdict> verdicts = new ArrayList<>();
+		try (GcWatcher gcWatcher = new GcWatcher(new GcWatcher.Callback() {
+
+			@Override
+			public void classUnloadingCollection(
+			        GarbageCollectionNotificationInfo info) {
+				for (LeakDetector detector : detectors) {
+					detector.classUnloadingCollection(info);
+				}
+			}
+
+		})) {
+			gcWatcher.start();
+			System.gc();
+			pressure.start();
+			long start = System.nanoTime();
+			long deadline = start + unit.toNanos(timeout);
+			for (LeakDetector detector : detectors) {
+				verdicts.add(detector.awaitVerdict(start, deadline));
+			}
+		}
+		return verdicts;
+	}
+
+	/**
+	 * Blocks until the tracked class loader has been enqueued by the garbage
+	 * collector, it is proven to be leaked or the deadline passed.
+	 */
+	private LeakVerdict awaitVerdict(long start, long deadline)
+	        throws InterruptedException {
+		while (!collected && !proven) {
+			long remaining =
+			        TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				break;
+			}
+			// ReferenceQueue.remove(0) would block forever
+			if (queue.remove(remaining) == reference) {
+				collected = true;
+			}
+		}
+		long end = System.nanoTime();
+		if (isCollected()) {
+			attributed.await(ATTRIBUTION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		synchronized (this) {
+			long duration = Math.max(0,
+			    (verdictNanos != 0 ? Math.min(end, verdictNanos) : end)
+			            - start);
+			return new LeakVerdict(isCollected(), proven && !isCollected(),
+			    classUnloadingCollections, collectionsByCollector,
+			    collectorName, gcCause, collectionsAtCap, metaspaceMax,
+			    duration);
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+final class LeakReport {
+
+	static final String WEBAPP_CLASS_LOADER =
+	        "org.apache.catalina.loader.WebappClassLoaderBase";
+
+	private LeakReport() {
+	}
+
+	/**
+	 * Describes how much the stopped webapp class loaders found in the heap
+	 * dump retain and how they are still reachable. The object index is built
+	 * next to the heap dump.
+	 */
+	static String create(Path heapDumpFile) throws IOException {
+		try (HeapDump heapDump = HeapDump.open(heapDumpFile)) {
+			LongLongMap classLoaders =
+			        findInstances(heapDump, WEBAPP_CLASS_LOADER, true);
+			if (classLoaders.isEmpty()) {
+				return "No stopped web application class loader found in "
+				        + heapDumpFile;
+			}
+			StringBuilder builder = new StringBuilder();
+			builder.append(classLoaders.size())
+			    .append(" stopped web application class loader(s) retained:");
+			try (ObjectIndex index = ObjectIndex.build(heapDump,
+			    heapDumpFile.toAbsolutePath().getParent())) {
+				appendRetainedSizes(builder, heapDump, index, classLoaders);
+				RetentionPath path =
+				        new GcRootPathFinder(heapDump, index).find(classLoaders);
+				builder.append(System.lineSeparator())
+				    .append("shortest path from a GC root:")
+				    .append(System.lineSeparator())
+				    .append(path == null ? "none found" : path.toString());
+			}
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * Appends the heap retained by every class loader, largest first, and the
+	 * number of classes it defined. Those classes stay in Metaspace as long as
+	 * their class loader is reachable, no matter what dominates them.
+	 */
+	private static void appendRetainedSizes(StringBuilder builder,
+	        HeapDump heapDump, ObjectIndex index, LongLongMap classLoaders)
+	        throws IOException {
+		LongLongMap definedClasses = new LongLongMap(classLoaders.size());
+		for (long classId : heapDump.classIds()) {
+			long loaderId = heapDump.classInfo(classId).loaderId;
+			if (classLoaders.containsKey(loaderId)) {
+				definedClasses.put(loaderId,
+				    definedClasses.get(loaderId, 0) + 1);
+			}
+		}
+		DominatorTree dominatorTree = new DominatorTree(index);
+		long[] classLoaderIds = classLoaders.keys();
+		long[] retainedSizes = new long[classLoaderIds.length];
+		for (int i = 0; i < classLoaderIds.length; i++) {
+			retainedSizes[i] = dominatorTree
+			    .retainedSize(index.indexOf(classLoaderIds[i]));
+		}
+		boolean[] appended = new boolean[classLoaderIds.length];
+		for (int n = 0; n < classLoaderIds.length; n++) {
+			int largest = -1;
+			for (int i = 0; i < classLoaderIds.length; i++) {
+				if (!appended[i] && (largest < 0
+				        || retainedSizes[i] > retainedSizes[largest])) {
+					largest = i;
+				}
+			}
+			appended[largest] = true;
+			long classLoaderId = classLoaderIds[largest];
+			builder.append(System.lineSeparator()).append("  ")
+			    .append(heapDump.describeObject(classLoaderId,
+			        classLoaders.get(classLoaderId, 0)))
+			    .append(" retains ").append(retainedSizes[largest] / 1024)
+			    .append(" KB of heap and ")
+			    .append(definedClasses.get(classLoaderId, 0))
+			    .append(" classes in Metaspace");
+		}
+	}
+
+	/**
+	 * @param stoppedOnly only include instances whose {@code resources} field
+	 *        is {@code null}, which is how a stopped WebappClassLoaderBase
+	 *        looks like
+	 * @return object id -> record offset of all instances of
+	 *         {@code className} and its subclasses
+	 */
+	static LongLongMap findInstances(final HeapDump heapDump,
+	        String className, boolean stoppedOnly) throws IOException {
+		final LongLongMap matchingClasses = new LongLongMap();
+		for (long classId : heapDump.classIds()) {
+			if (heapDump.isSubclass(classId, className)) {
+				matchingClasses.put(classId, 1);
+			}
+		}
+		final LongLongMap[] chunkInstances =
+		        new LongLongMap[heapDump.chunkCount()];
+		heapDump.forEachChunk(new HeapDump.ChunkTask() {
+
+			@Override
+			public void run(int chunk) throws IOException {
+				final LongLongMap instances = new LongLongMap();
+				heapDump.scan(chunk, new HeapDump.HeapVisitor() {
+
+					@Override
+					void object(long objectId, int tag, long classId,
+					        long recordOffset, long shallowSize) {
+						if (tag == HprofTypes.INSTANCE_DUMP
+						        && matchingClasses.containsKey(classId)) {
+							instances.put(objectId, recordOffset);
+						}
+					}
+
+				});
+				chunkInstances[chunk] = instances;
+			}
+
+		});
+		LongLongMap instances = new LongLongMap();
+		for (LongLongMap candidates : chunkInstances) {
+			for (long objectId : candidates.keys()) {
+				long recordOffset = candidates.get(objectId, 0);
+				if (!stoppedOnly || heapDump.objectField(recordOffset,
+				    "resources") == 0) {
+					instances.put(objectId, recordOffset);
+				}
+			}
+		}
+		return instances;
+	}
+
+}
@@ -0,0 +1,107 @@
+package de.evosec.leaktest;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public final class LeakVerdict {
+
+	private final boolean collected;
+	private final boolean provenLeak;
+	private final int classUnloadingCollections;
+	private final Map<String, Integer> collectionsByCollector;
+	private final String collectorName;
+	private final String gcCause;
+	private final int collectionsAtCap;
+	private final long metaspaceMax;
+	private final long durationNanos;
+
+	LeakVerdict(boolean collected, boolean provenLeak,
+	        int classUnloadingCollections,
+	        Map<String, Integer> collectionsByCollector, String collectorName,
+	        String gcCause, int collectionsAtCap, long metaspaceMax,
+	        long durationNanos) {
+		this.collected = collected;
+		this.provenLeak = provenLeak;
+		this.classUnloadingCollections = classUnloadingCollections;
+		this.collectionsByCollector = Collections
+		    .unmodifiableMap(new LinkedHashMap<>(collectionsByCollector));
+		this.collectorName = collectorName;
+		this.gcCause = gcCause;
+		this.collectionsAtCap = collectionsAtCap;
+		this.metaspaceMax = metaspaceMax;
+		this.durationNanos = durationNanos;
+	}
+
+	public boolean isCollected() {
+		return collected;
+	}
+
+	/**
+	 * @return {@code true} if the class loader survived enough class unloading
+	 *         collections with Metaspace at its cap to be reported as leaked
+	 *         before the timeout elapsed
+	 */
+	public boolean isProvenLeak() {
+		return provenLeak;
+	}
+
+	/**
+	 * @return the number of collections that could have unloaded the class
+	 *         loader until it was freed or the verdict gave up
+	 */
+	public int getClassUnloadingCollections() {
+		return classUnloadingCollections;
+	}
+
+	public Map<String, Integer> getCollectionsByCollector() {
+		return collectionsByCollector;
+	}
+
+	/**
+	 * @return the name of the collector that freed the class loader or
+	 *         {@code null} if it was not collected or the collection was not
+	 *         reported through a GC notification
+	 */
+	public String getCollectorName() {
+		return collectorName;
+	}
+
+	public String getGcCause() {
+		return gcCause;
+	}
+
+	/**
+	 * @return the number of class unloading collections that ran while
+	 *         Metaspace was committed up to MaxMetaspaceSize
+	 */
+	public int getCollectionsAtCap() {
+		return collectionsAtCap;
+	}
+
+	public long getDuration(TimeUnit unit) {
+		return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(collected ? "ClassLoader GC'ed" : "ClassLoader not GC'ed");
+		builder.append(" after ").append(getDuration(TimeUnit.MILLISECONDS))
+		    .append(" ms and ").append(classUnloadingCollections)
+		    .append(" class unloading collections ")
+		    .append(collectionsByCollector);
+		if (collectorName != null) {
+			builder.append(", freed by ").append(collectorName).append(" (")
+			    .append(gcCause).append(")");
+		}
+		if (collectionsAtCap > 0) {
+			builder.append(", ").append(collectionsAtCap)
+			    .append(" of them with Metaspace at its cap of ")
+			    .append(metaspaceMax / 1024 / 1024).append(" MB");
+		}
+		return builder.toString();
+	}
+
+}
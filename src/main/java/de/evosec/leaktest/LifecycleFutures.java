@@ -0,0 +1,108 @@
+package de.evosec.leaktest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.LifecycleState;
+
+/**
+ * Completes a future as soon as a server or context reaches a lifecycle state,
+ * so the phases of a test wait on events instead of polling the state. A
+ * component that fails to start is stopped by Tomcat right away, which
+ * completes {@link #failed()} and fails {@link #started()}.
+ */
+final class LifecycleFutures implements LifecycleListener {
+
+	private final CompletableFuture<Void> started = new CompletableFuture<>();
+	private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+	private final CompletableFuture<Void> destroyed = new CompletableFuture<>();
+	private final CompletableFuture<Void> failed = new CompletableFuture<>();
+	// written before started is completed, which publishes it
+	private long startedNanos;
+
+	/**
+	 * Only the first start, stop and destroy complete the futures, a context
+	 * that is reloaded keeps the ones of its first generation.
+	 */
+	@Override
+	public void lifecycleEvent(LifecycleEvent event) {
+		Lifecycle lifecycle = event.getLifecycle();
+		switch (event.getType()) {
+			case Lifecycle.AFTER_START_EVENT:
+				if (!started.isDone()) {
+					startedNanos = System.nanoTime();
+					started.complete(null);
+				}
+				break;
+			case Lifecycle.BEFORE_STOP_EVENT:
+				if (lifecycle.getState() == LifecycleState.FAILED) {
+					failed.complete(null);
+					started.completeExceptionally(new LifecycleException(
+					    lifecycle + " state is not STARTED but FAILED"));
+				}
+				break;
+			case Lifecycle.AFTER_STOP_EVENT:
+				stopped.complete(null);
+				break;
+			case Lifecycle.AFTER_DESTROY_EVENT:
+				destroyed.complete(null);
+				break;
+			default:
+				break;
+		}
+	}
+
+	CompletableFuture<Void> started() {
+		return started;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} of the first after start event,
+	 *         only valid once {@link #started()} completed normally
+	 */
+	long getStartedNanos() {
+		return startedNanos;
+	}
+
+	CompletableFuture<Void> stopped() {
+		return stopped;
+	}
+
+	CompletableFuture<Void> destroyed() {
+		return destroyed;
+	}
+
+	CompletableFuture<Void> failed() {
+		return failed;
+	}
+
+	/**
+	 * Waits for {@code future} and rethrows its failure.
+	 */
+	static void await(CompletableFuture<?> future, String description,
+	        long timeout, TimeUnit unit) throws LifecycleException {
+		try {
+			future.get(timeout, unit);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof LifecycleException) {
+				throw (LifecycleException) e.getCause();
+			}
+			throw new LifecycleException(e.getCause());
+		} catch (TimeoutException e) {
+			throw new LifecycleException("Timed out after " + timeout + " "
+			        + unit.toString().toLowerCase() + " waiting until "
+			        + description);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LifecycleException(
+			    "Interrupted while waiting until " + description, e);
+		}
+	}
+
+}
@@ -0,0 +1,225 @@
+package de.evosec.leaktest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+
+/**
+ * Records every lifecycle event of the watched server, service, engine, host
+ * and context components with its {@link System#nanoTime()} in a ring buffer
+ * that is allocated up front, so recording does not allocate. Only the name
+ * of a component is kept, never the component itself, so the timeline cannot
+ * retain a context after it was undeployed.
+ */
+public final class LifecycleTimeline {
+
+	public static final class Event {
+
+		private final long nanos;
+		private final String component;
+		private final String type;
+
+		Event(long nanos, String component, String type) {
+			this.nanos = nanos;
+			this.component = component;
+			this.type = type;
+		}
+
+		/**
+		 * @return the {@link System#nanoTime()} the event was fired at
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		public String getComponent() {
+			return component;
+		}
+
+		/**
+		 * @return one of the event types of {@link Lifecycle}
+		 */
+		public String getType() {
+			return type;
+		}
+
+		@Override
+		public String toString() {
+			return component + " " + type;
+		}
+
+	}
+
+	static final int DEFAULT_CAPACITY = 4096;
+
+	private static final Map<String, String> SPANS = new LinkedHashMap<>();
+
+	static {
+		SPANS.put(Lifecycle.BEFORE_INIT_EVENT, "init");
+		SPANS.put(Lifecycle.AFTER_INIT_EVENT, "init");
+		SPANS.put(Lifecycle.BEFORE_START_EVENT, "start");
+		SPANS.put(Lifecycle.AFTER_START_EVENT, "start");
+		SPANS.put(Lifecycle.BEFORE_STOP_EVENT, "stop");
+		SPANS.put(Lifecycle.AFTER_STOP_EVENT, "stop");
+		SPANS.put(Lifecycle.BEFORE_DESTROY_EVENT, "destroy");
+		SPANS.put(Lifecycle.AFTER_DESTROY_EVENT, "destroy");
+	}
+
+	private final long[] nanos;
+	private final String[] components;
+	private final String[] types;
+	private long recorded = 0;
+
+	LifecycleTimeline() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	LifecycleTimeline(int capacity) {
+		nanos = new long[capacity];
+		components = new String[capacity];
+		types = new String[capacity];
+	}
+
+	/**
+	 * Records the events of {@code lifecycle} under {@code component}.
+	 */
+	void watch(Lifecycle lifecycle, String component) {
+		lifecycle.addLifecycleListener(listener(component));
+	}
+
+	/**
+	 * @return a listener recording the events it receives under
+	 *         {@code component}, for components whose listeners have to be
+	 *         passed on creation
+	 */
+	LifecycleListener listener(final String component) {
+		return new LifecycleListener() {
+
+			@Override
+			public void lifecycleEvent(LifecycleEvent event) {
+				record(System.nanoTime(), component, event.getType());
+			}
+
+		};
+	}
+
+	synchronized void record(long time, String component, String type) {
+		int slot = (int) (recorded % nanos.length);
+		nanos[slot] = time;
+		components[slot] = component;
+		types[slot] = type;
+		recorded++;
+	}
+
+	/**
+	 * @return the recorded events, oldest first
+	 */
+	public synchronized List<Event> getEvents() {
+		List<Event> events = new ArrayList<>();
+		for (long i = Math.max(0, recorded - nanos.length); i < recorded; i++) {
+			int slot = (int) (i % nanos.length);
+			events.add(new Event(nanos[slot], components[slot], types[slot]));
+		}
+		return Collections.unmodifiableList(events);
+	}
+
+	/**
+	 * @return the number of oldest events that were overwritten because the
+	 *         ring buffer was full
+	 */
+	public synchronized long getDroppedEvents() {
+		return Math.max(0, recorded - nanos.length);
+	}
+
+	/**
+	 * @return the timeline in the Chrome trace event format, which can be
+	 *         opened in {@code chrome://tracing} or Perfetto. Every component
+	 *         is a thread, init, start, stop and destroy are spans and all
+	 *         other events are instants.
+	 */
+	public String toChromeTrace() {
+		List<Event> events = getEvents();
+		long origin = events.isEmpty() ? 0 : events.get(0).nanos;
+		Map<String, Integer> threads = new LinkedHashMap<>();
+		StringBuilder json = new StringBuilder("{\"traceEvents\":[");
+		boolean first = true;
+		for (Event event : events) {
+			Integer tid = threads.get(event.component);
+			if (tid == null) {
+				tid = threads.size() + 1;
+				threads.put(event.component, tid);
+				first = appendSeparator(json, first);
+				json.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,")
+				    .append("\"tid\":").append(tid)
+				    .append(",\"args\":{\"name\":");
+				appendString(json, event.component);
+				json.append("}}");
+			}
+			String span = SPANS.get(event.type);
+			String phase = "i";
+			if (span != null) {
+				phase = event.type.startsWith("before") ? "B" : "E";
+			}
+			double micros = (event.nanos - origin)
+			        / (double) TimeUnit.MICROSECONDS.toNanos(1);
+			first = appendSeparator(json, first);
+			json.append("{\"name\":");
+			appendString(json, span != null ? span : event.type);
+			json.append(",\"cat\":\"lifecycle\",\"ph\":\"").append(phase)
+			    .append("\",\"ts\":")
+			    .append(String.format(Locale.ROOT, "%.3f", micros))
+			    .append(",\"pid\":1,\"tid\":").append(tid);
+			if ("i".equals(phase)) {
+				json.append(",\"s\":\"t\"");
+			}
+			json.append("}");
+		}
+		return json.append("]}").toString();
+	}
+
+	@Override
+	public String toString() {
+		List<Event> events = getEvents();
+		long origin = events.isEmpty() ? 0 : events.get(0).nanos;
+		StringBuilder builder = new StringBuilder();
+		for (Event event : events) {
+			if (builder.length() > 0) {
+				builder.append(System.lineSeparator());
+			}
+			builder.append(String.format("%+12.3f ms %s",
+			    (event.nanos - origin) / 1e6, event));
+		}
+		return builder.toString();
+	}
+
+	private static boolean appendSeparator(StringBuilder json, boolean first) {
+		if (!first) {
+			json.append(',');
+		}
+		return false;
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+}
@@ -0,0 +1,100 @@
+package de.evosec.leaktest;
+
+/**
+ * Open addressing hash map from non-zero {@code long} keys to {@code long}
+ * values, without boxing.
+ */
+final class LongLongMap {
+
+	private long[] keys;
+	private long[] values;
+	private int size;
+
+	LongLongMap() {
+		this(16);
+	}
+
+	LongLongMap(int expectedSize) {
+		int capacity =
+		        Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+		keys = new long[capacity];
+		values = new long[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return keys[slot(key)] == key;
+	}
+
+	public long get(long key, long defaultValue) {
+		int slot = slot(key);
+		return keys[slot] == key ? values[slot] : defaultValue;
+	}
+
+	public void put(long key, long value) {
+		if (key == 0) {
+			throw new IllegalArgumentException("key cannot be 0");
+		}
+		int slot = slot(key);
+		if (keys[slot] != key) {
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+				slot = slot(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+	}
+
+	public long[] keys() {
+		long[] result = new long[size];
+		int i = 0;
+		for (long key : keys) {
+			if (key != 0) {
+				result[i++] = key;
+			}
+		}
+		return result;
+	}
+
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) mix(key) & mask;
+		while (keys[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new long[oldValues.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+}
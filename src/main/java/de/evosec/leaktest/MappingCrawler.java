@@ -0,0 +1,103 @@
+package de.evosec.leaktest;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.servlet.ServletRegistration;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+/**
+ * Derives one request path for every servlet mapping, filter mapping and
+ * welcome file of a started context, so a warm-up crawl initialises every
+ * servlet without a list of end points per WAR. Extension mappings like
+ * {@code *.jsp} are resolved to the files of the web application with that
+ * extension.
+ */
+final class MappingCrawler {
+
+	static final int MAX_PATHS = 1000;
+
+	private MappingCrawler() {
+	}
+
+	/**
+	 * @return the paths to crawl relative to the context path, without a
+	 *         leading slash, at most {@value #MAX_PATHS}
+	 */
+	static Set<String> discover(Context context) {
+		Set<String> patterns = new TreeSet<>();
+		for (String pattern : context.findServletMappings()) {
+			patterns.add(pattern);
+		}
+		for (ServletRegistration registration : context.getServletContext()
+		    .getServletRegistrations().values()) {
+			patterns.addAll(registration.getMappings());
+		}
+		for (FilterMap filterMap : context.findFilterMaps()) {
+			for (String pattern : filterMap.getURLPatterns()) {
+				patterns.add(pattern);
+			}
+		}
+
+		Set<String> paths = new TreeSet<>();
+		paths.add("");
+		for (String welcomeFile : context.findWelcomeFiles()) {
+			add(paths, "/" + welcomeFile);
+		}
+		for (String pattern : patterns) {
+			if (pattern.startsWith("*.")) {
+				addFiles(paths, context.getResources(), pattern.substring(1));
+			} else if (pattern.endsWith("/*")) {
+				add(paths, pattern.substring(0, pattern.length() - 1));
+			} else if (pattern.startsWith("/") && !pattern.contains("*")) {
+				add(paths, pattern);
+			}
+			// "" maps the context root, which is always crawled
+		}
+		return paths;
+	}
+
+	private static void addFiles(Set<String> paths, WebResourceRoot resources,
+	        String extension) {
+		Deque<String> directories = new ArrayDeque<>();
+		directories.add("/");
+		while (!directories.isEmpty() && paths.size() < MAX_PATHS) {
+			Set<String> children =
+			        resources.listWebAppPaths(directories.poll());
+			if (children == null) {
+				continue;
+			}
+			for (String child : children) {
+				if (child.endsWith("/")) {
+					if (!"/WEB-INF/".equals(child)
+					        && !"/META-INF/".equals(child)) {
+						directories.add(child);
+					}
+				} else if (child.endsWith(extension)) {
+					add(paths, child);
+				}
+			}
+		}
+	}
+
+	private static void add(Set<String> paths, String path) {
+		if (paths.size() >= MAX_PATHS) {
+			return;
+		}
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (c <= ' ' || c >= 0x7f || c == '?' || c == '#'
+			        || c == '%') {
+				// would have to be encoded
+				return;
+			}
+		}
+		paths.add(path.substring(1));
+	}
+
+}
@@ -0,0 +1,92 @@
+package de.evosec.leaktest;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Usage of every memory pool and buffer pool and the class loading counters
+ * of the JVM at one point in time.
+ */
+public final class MemorySnapshot {
+
+	private final Map<String, MemoryUsage> memoryPools = new LinkedHashMap<>();
+	private final Map<String, Long> bufferPoolMemoryUsed =
+	        new LinkedHashMap<>();
+	private final Map<String, Long> bufferPoolCounts = new LinkedHashMap<>();
+	private final int loadedClassCount;
+	private final long totalLoadedClassCount;
+	private final long unloadedClassCount;
+
+	private MemorySnapshot() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			MemoryUsage usage = pool.getUsage();
+			if (usage != null) {
+				memoryPools.put(pool.getName(), usage);
+			}
+		}
+		for (BufferPoolMXBean pool : ManagementFactory
+		    .getPlatformMXBeans(BufferPoolMXBean.class)) {
+			bufferPoolMemoryUsed.put(pool.getName(), pool.getMemoryUsed());
+			bufferPoolCounts.put(pool.getName(), pool.getCount());
+		}
+		ClassLoadingMXBean classLoading =
+		        ManagementFactory.getClassLoadingMXBean();
+		loadedClassCount = classLoading.getLoadedClassCount();
+		totalLoadedClassCount = classLoading.getTotalLoadedClassCount();
+		unloadedClassCount = classLoading.getUnloadedClassCount();
+	}
+
+	static MemorySnapshot take() {
+		return new MemorySnapshot();
+	}
+
+	public Map<String, MemoryUsage> getMemoryPools() {
+		return Collections.unmodifiableMap(memoryPools);
+	}
+
+	public Map<String, Long> getBufferPoolMemoryUsed() {
+		return Collections.unmodifiableMap(bufferPoolMemoryUsed);
+	}
+
+	public Map<String, Long> getBufferPoolCounts() {
+		return Collections.unmodifiableMap(bufferPoolCounts);
+	}
+
+	public int getLoadedClassCount() {
+		return loadedClassCount;
+	}
+
+	public long getTotalLoadedClassCount() {
+		return totalLoadedClassCount;
+	}
+
+	public long getUnloadedClassCount() {
+		return unloadedClassCount;
+	}
+
+	public long getMetaspaceUsed() {
+		MemoryUsage usage = memoryPools.get("Metaspace");
+		return usage == null ? 0 : usage.getUsed();
+	}
+
+	/**
+	 * @return the used bytes of the code cache, which is split into several
+	 *         code heap pools since Java 9
+	 */
+	public long getCodeCacheUsed() {
+		long used = 0;
+		for (Map.Entry<String, MemoryUsage> entry : memoryPools.entrySet()) {
+			if (entry.getKey().startsWith("Code")) {
+				used += entry.getValue().getUsed();
+			}
+		}
+		return used;
+	}
+
+}
@@ -0,0 +1,284 @@
+package de.evosec.leaktest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Fills Metaspace with throw-away classes up to a target fill ratio, then
+ * releases them and waits for a class unloading collection before filling
+ * again. Every further cycle fills Metaspace up to its cap, which makes the
+ * JVM run a last ditch collection that also clears soft references.
+ */
+final class MetaspacePressure implements Runnable, NotificationListener,
+        GcWatcher.Callback, AutoCloseable {
+
+	/**
+	 * A filler class loader and the number of classes it defined, its
+	 * classes are unloaded once it is cleared.
+	 */
+	private static final class FillerLoader
+	        extends WeakReference<DummyClassLoader> {
+
+		private long classes = 0;
+
+		FillerLoader(DummyClassLoader classLoader) {
+			super(classLoader);
+		}
+
+	}
+
+	private static final int MIN_BATCH_SIZE = 64;
+	private static final int MAX_BATCH_SIZE = 4096;
+	private static final int CHUNK_SIZE = 64;
+	private static final long GC_WAIT_MILLIS = 500;
+
+	private final double targetFillRatio;
+	private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+	private final Map<MemoryPoolMXBean, Long> previousThresholds =
+	        new LinkedHashMap<>();
+	private final NotificationEmitter memoryEmitter =
+	        (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+	private final GcWatcher gcWatcher = new GcWatcher(this);
+	private final Object monitor = new Object();
+	private final Thread thread;
+
+	private volatile boolean stopped = false;
+	private volatile boolean thresholdExceeded = false;
+	private boolean capReached = false;
+	private boolean escalated = false;
+	private long classUnloadingCollections = 0;
+
+	private DummyClassLoader classLoader;
+	private final List<FillerLoader> fillerLoaders = new ArrayList<>();
+	private long bytesPerClass = 1024;
+	private long definedClasses = 0;
+
+	MetaspacePressure(double targetFillRatio) {
+		this.targetFillRatio = targetFillRatio;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (isMetaspacePool(pool.getName())
+			        && pool.getType() == MemoryType.NON_HEAP
+			        && pool.getUsage().getMax() > 0) {
+				pools.add(pool);
+			}
+		}
+		thread = new Thread(this, "metaspacePressure");
+		thread.setDaemon(true);
+	}
+
+	static boolean isMetaspacePool(String poolName) {
+		return "Metaspace".equals(poolName)
+		        || "Compressed Class Space".equals(poolName);
+	}
+
+	/**
+	 * @return the number of filler classes defined so far, exact once
+	 *         {@link #close()} returned
+	 */
+	public long getDefinedClasses() {
+		return definedClasses;
+	}
+
+	/**
+	 * @return the number of filler classes unloaded so far, only valid once
+	 *         {@link #close()} returned
+	 */
+	public long getUnloadedClasses() {
+		long unloaded = 0;
+		for (FillerLoader fillerLoader : fillerLoaders) {
+			if (fillerLoader.get() == null) {
+				unloaded += fillerLoader.classes;
+			}
+		}
+		return unloaded;
+	}
+
+	public void start() {
+		for (MemoryPoolMXBean pool : pools) {
+			if (pool.isUsageThresholdSupported()) {
+				previousThresholds.put(pool, pool.getUsageThreshold());
+				pool.setUsageThreshold(
+				    (long) (pool.getUsage().getMax() * targetFillRatio));
+			}
+		}
+		memoryEmitter.addNotificationListener(this, null, null);
+		gcWatcher.start();
+		thread.start();
+	}
+
+	@Override
+	public void close() {
+		stopped = true;
+		synchronized (monitor) {
+			monitor.notifyAll();
+		}
+		thread.interrupt();
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		gcWatcher.close();
+		try {
+			memoryEmitter.removeNotificationListener(this);
+		} catch (ListenerNotFoundException e) {
+			// start() was never called
+		}
+		for (Map.Entry<MemoryPoolMXBean, Long> entry : previousThresholds
+		    .entrySet()) {
+			entry.getKey().setUsageThreshold(entry.getValue());
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!stopped) {
+				if (isAtLimit()) {
+					backOff();
+				} else {
+					defineBatch();
+				}
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		} finally {
+			classLoader = null;
+		}
+	}
+
+	@Override
+	public void handleNotification(Notification notification,
+	        Object handback) {
+		if (!MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED
+		    .equals(notification.getType())) {
+			return;
+		}
+		MemoryNotificationInfo info = MemoryNotificationInfo
+		    .from((CompositeData) notification.getUserData());
+		if (isMetaspacePool(info.getPoolName())) {
+			thresholdExceeded = true;
+		}
+	}
+
+	@Override
+	public void classUnloadingCollection(
+	        GarbageCollectionNotificationInfo info) {
+		synchronized (monitor) {
+			classUnloadingCollections++;
+			monitor.notifyAll();
+		}
+	}
+
+	private boolean isAtLimit() {
+		if (escalated) {
+			return capReached;
+		}
+		return thresholdExceeded || fillRatio() >= targetFillRatio;
+	}
+
+	private void backOff() throws InterruptedException {
+		// drop the filler classes so the next class unloading collection can
+		// reclaim them together with the class loader under test
+		classLoader = null;
+		thresholdExceeded = false;
+		capReached = false;
+		escalated = true;
+
+		synchronized (monitor) {
+			long collections = classUnloadingCollections;
+			long deadline = System.currentTimeMillis() + GC_WAIT_MILLIS;
+			long remaining = GC_WAIT_MILLIS;
+			while (!stopped && collections == classUnloadingCollections
+			        && remaining > 0) {
+				monitor.wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			if (stopped || collections != classUnloadingCollections) {
+				return;
+			}
+		}
+		System.gc();
+	}
+
+	private void defineBatch() {
+		if (classLoader == null) {
+			classLoader = DummyClassLoader.newInstance();
+			fillerLoaders.add(new FillerLoader(classLoader));
+		}
+		FillerLoader fillerLoader = fillerLoaders.get(fillerLoaders.size() - 1);
+		long usedBefore = metaspaceUsed();
+		double fillRatio = escalated ? 1 : targetFillRatio;
+		int batchSize = (int) Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE,
+		    remainingBytes(fillRatio) / bytesPerClass));
+		int defined = 0;
+		try {
+			while (defined < batchSize && !stopped && !isAtLimit()) {
+				classLoader.defineFillerClasses(CHUNK_SIZE);
+				defined += CHUNK_SIZE;
+				definedClasses += CHUNK_SIZE;
+				fillerLoader.classes += CHUNK_SIZE;
+			}
+		} catch (OutOfMemoryError e) {
+			capReached = true;
+			thresholdExceeded = true;
+		}
+		long usedAfter = metaspaceUsed();
+		if (defined > 0 && usedAfter > usedBefore) {
+			bytesPerClass = Math.max(1, (usedAfter - usedBefore) / defined);
+		}
+		Thread.yield();
+	}
+
+	private double fillRatio() {
+		double ratio = 0;
+		for (MemoryPoolMXBean pool : pools) {
+			MemoryUsage usage = pool.getUsage();
+			ratio = Math.max(ratio, (double) usage.getUsed() / usage.getMax());
+		}
+		return ratio;
+	}
+
+	private long remainingBytes(double fillRatio) {
+		long remaining = Long.MAX_VALUE;
+		for (MemoryPoolMXBean pool : pools) {
+			MemoryUsage usage = pool.getUsage();
+			remaining = Math.min(remaining,
+			    (long) (usage.getMax() * fillRatio) - usage.getUsed());
+		}
+		return Math.max(0, remaining);
+	}
+
+	private long metaspaceUsed() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : pools) {
+			if ("Metaspace".equals(pool.getName())) {
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+
+}
@@ -0,0 +1,267 @@
+package de.evosec.leaktest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import de.evosec.leaktest.IndexFile.IntArray;
+import de.evosec.leaktest.IndexFile.LongArray;
+
+/**
+ * Maps the objects of a heap dump to dense indexes and stores their record
+ * offsets, classes and outbound strong references in memory mapped primitive
+ * arrays. The outbound references of object {@code i} are the edges
+ * {@code edgeStart(i)} (inclusive) to {@code edgeStart(i + 1)} (exclusive).
+ * <p>
+ * The dump chunks are scanned in parallel, objects get their indexes in file
+ * order, so the index does not depend on the number of chunks.
+ */
+final class ObjectIndex implements Closeable {
+
+	private final IndexFile file;
+	private final int size;
+	private final long edgeCount;
+	private final LongArray ids;
+	private final LongArray offsets;
+	private final LongArray classIds;
+	private final LongArray shallowSizes;
+	private final LongArray edgeStarts;
+	private final IntArray edges;
+	// open addressing table object id -> index
+	private final long tableMask;
+	private final LongArray tableKeys;
+	private final IntArray tableValues;
+	private final int[] roots;
+
+	private ObjectIndex(final HeapDump heapDump, IndexFile file)
+	        throws IOException {
+		this.file = file;
+
+		int chunks = heapDump.chunkCount();
+		final long[] objectStarts = new long[chunks + 1];
+		final long[] referenceStarts = new long[chunks + 1];
+		heapDump.forEachChunk(new HeapDump.ChunkTask() {
+
+			@Override
+			public void run(int chunk) throws IOException {
+				final long[] counts = new long[2];
+				heapDump.scan(chunk, new HeapDump.HeapVisitor() {
+
+					@Override
+					void object(long objectId, int tag, long classId,
+					        long recordOffset, long shallowSize) {
+						counts[0]++;
+					}
+
+					@Override
+					void reference(long objectId, long recordOffset,
+					        long targetId) {
+						counts[1]++;
+					}
+
+				});
+				objectStarts[chunk + 1] = counts[0];
+				referenceStarts[chunk + 1] = counts[1];
+			}
+
+		});
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			objectStarts[chunk + 1] += objectStarts[chunk];
+			referenceStarts[chunk + 1] += referenceStarts[chunk];
+		}
+		if (objectStarts[chunks] >= Integer.MAX_VALUE) {
+			throw new IOException("Too many objects: " + objectStarts[chunks]);
+		}
+		size = (int) objectStarts[chunks];
+		ids = file.allocateLongs(size);
+		offsets = file.allocateLongs(size);
+		classIds = file.allocateLongs(size);
+		shallowSizes = file.allocateLongs(size);
+		edgeStarts = file.allocateLongs(size + 1L);
+		edges = file.allocateInts(referenceStarts[chunks]);
+		long capacity = Long.highestOneBit(Math.max(4, size * 2L - 1)) << 1;
+		tableMask = capacity - 1;
+		tableKeys = file.allocateLongs(capacity);
+		tableValues = file.allocateInts(capacity);
+
+		heapDump.forEachChunk(new HeapDump.ChunkTask() {
+
+			@Override
+			public void run(final int chunk) throws IOException {
+				heapDump.scan(chunk, new HeapDump.HeapVisitor() {
+
+					private long index = objectStarts[chunk];
+
+					@Override
+					void object(long objectId, int tag, long classId,
+					        long recordOffset, long shallowSize) {
+						ids.set(index, objectId);
+						offsets.set(index, recordOffset);
+						classIds.set(index, classId);
+						shallowSizes.set(index, shallowSize);
+						index++;
+					}
+
+				});
+			}
+
+		});
+		for (int i = 0; i < size; i++) {
+			insert(ids.get(i), i);
+		}
+
+		// every chunk writes its edges to the space reserved by the count,
+		// references to objects missing in the dump leave gaps behind them
+		final long[] edgeEnds = new long[chunks];
+		heapDump.forEachChunk(new HeapDump.ChunkTask() {
+
+			@Override
+			public void run(final int chunk) throws IOException {
+				final long[] edge = { referenceStarts[chunk] };
+				heapDump.scan(chunk, new HeapDump.HeapVisitor() {
+
+					private long index = objectStarts[chunk];
+
+					@Override
+					void object(long objectId, int tag, long classId,
+					        long recordOffset, long shallowSize) {
+						edgeStarts.set(index++, edge[0]);
+					}
+
+					@Override
+					void reference(long objectId, long recordOffset,
+					        long targetId) {
+						int target = indexOf(targetId);
+						if (target >= 0) {
+							edges.set(edge[0]++, target);
+						}
+					}
+
+				});
+				edgeEnds[chunk] = edge[0];
+			}
+
+		});
+		long edgeCount = 0;
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			long shift = referenceStarts[chunk] - edgeCount;
+			if (shift > 0) {
+				for (long edge = referenceStarts[chunk]; edge < edgeEnds[chunk];
+				        edge++) {
+					edges.set(edge - shift, edges.get(edge));
+				}
+				for (long i = objectStarts[chunk]; i < objectStarts[chunk + 1];
+				        i++) {
+					edgeStarts.set(i, edgeStarts.get(i) - shift);
+				}
+			}
+			edgeCount += edgeEnds[chunk] - referenceStarts[chunk];
+		}
+		edgeStarts.set(size, edgeCount);
+		this.edgeCount = edgeCount;
+
+		long[] rootIds = heapDump.rootIds();
+		int[] rootIndexes = new int[rootIds.length];
+		int count = 0;
+		for (long rootId : rootIds) {
+			int index = indexOf(rootId);
+			if (index >= 0) {
+				rootIndexes[count++] = index;
+			}
+		}
+		roots = Arrays.copyOf(rootIndexes, count);
+	}
+
+	/**
+	 * Builds the index of {@code heapDump} in a temporary file inside
+	 * {@code directory}, which is deleted again on {@link #close()}.
+	 */
+	static ObjectIndex build(HeapDump heapDump, Path directory)
+	        throws IOException {
+		IndexFile file = new IndexFile(directory);
+		try {
+			return new ObjectIndex(heapDump, file);
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * @return the file backing this index, for temporary arrays of analyses
+	 *         working on it
+	 */
+	public IndexFile file() {
+		return file;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long edgeCount() {
+		return edgeCount;
+	}
+
+	public long id(int index) {
+		return ids.get(index);
+	}
+
+	public long offset(int index) {
+		return offsets.get(index);
+	}
+
+	public long classId(int index) {
+		return classIds.get(index);
+	}
+
+	public long shallowSize(int index) {
+		return shallowSizes.get(index);
+	}
+
+	public long edgeStart(int index) {
+		return edgeStarts.get(index);
+	}
+
+	public int edge(long edge) {
+		return edges.get(edge);
+	}
+
+	/**
+	 * @return the indexes of all objects that are GC roots
+	 */
+	public int[] roots() {
+		return roots.clone();
+	}
+
+	/**
+	 * @return the index of the object or {@code -1} if it is not in the dump
+	 */
+	public int indexOf(long objectId) {
+		long slot = LongLongMap.mix(objectId) & tableMask;
+		long key;
+		while ((key = tableKeys.get(slot)) != 0) {
+			if (key == objectId) {
+				return tableValues.get(slot);
+			}
+			slot = (slot + 1) & tableMask;
+		}
+		return -1;
+	}
+
+	private void insert(long objectId, int index) {
+		long slot = LongLongMap.mix(objectId) & tableMask;
+		while (tableKeys.get(slot) != 0) {
+			slot = (slot + 1) & tableMask;
+		}
+		tableKeys.set(slot, objectId);
+		tableValues.set(slot, index);
+	}
+
+}
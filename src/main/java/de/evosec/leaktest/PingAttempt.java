@@ -0,0 +1,61 @@
+package de.evosec.leaktest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One request to the ping end point while waiting for a deployed web
+ * application to answer.
+ */
+public final class PingAttempt {
+
+	private final long offsetNanos;
+	private final long durationNanos;
+	private final int responseCode;
+	private final String failure;
+
+	PingAttempt(long offsetNanos, long durationNanos, int responseCode,
+	        String failure) {
+		this.offsetNanos = offsetNanos;
+		this.durationNanos = durationNanos;
+		this.responseCode = responseCode;
+		this.failure = failure;
+	}
+
+	/**
+	 * @return when the request was sent, relative to the context firing its
+	 *         after start event
+	 */
+	public long getOffset(TimeUnit unit) {
+		return unit.convert(offsetNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public long getDuration(TimeUnit unit) {
+		return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the HTTP status or {@code -1} if the request failed
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	/**
+	 * @return why the request failed or {@code null}
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	public boolean isSuccessful() {
+		return responseCode == 200;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("+%.1f ms: %s after %.1f ms", offsetNanos / 1e6,
+		    failure != null ? failure : "HTTP " + responseCode,
+		    durationNanos / 1e6);
+	}
+
+}
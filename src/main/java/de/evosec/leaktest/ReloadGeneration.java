@@ -0,0 +1,84 @@
+package de.evosec.leaktest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One class loader generation of a context that was replaced by
+ * {@link org.apache.catalina.Context#reload()}, with the pause the reload
+ * caused and the leak verdict of the replaced class loader.
+ */
+public final class ReloadGeneration {
+
+	private final int generation;
+	private final LeakDetector leakDetector;
+	private final long reloadNanos;
+	private final long requestPauseNanos;
+	private final int requests;
+	private final int failedRequests;
+	private LeakVerdict leakVerdict;
+
+	ReloadGeneration(int generation, LeakDetector leakDetector,
+	        long reloadNanos, RequestProbe probe) {
+		this.generation = generation;
+		this.leakDetector = leakDetector;
+		this.reloadNanos = reloadNanos;
+		this.requestPauseNanos = probe.getLongestRequestNanos();
+		this.requests = probe.getRequests();
+		this.failedRequests = probe.getFailures();
+	}
+
+	/**
+	 * @return the generation of the replaced class loader, {@code 1} for the
+	 *         one the context was deployed with
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	public long getReloadTime(TimeUnit unit) {
+		return unit.convert(reloadNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the latency of the slowest request sent during the reload,
+	 *         which is how long requests were blocked
+	 */
+	public long getRequestPause(TimeUnit unit) {
+		return unit.convert(requestPauseNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public int getRequests() {
+		return requests;
+	}
+
+	public int getFailedRequests() {
+		return failedRequests;
+	}
+
+	/**
+	 * @return the leak verdict of the replaced class loader or {@code null}
+	 *         if leaks were not tested
+	 */
+	public LeakVerdict getLeakVerdict() {
+		return leakVerdict;
+	}
+
+	LeakDetector getLeakDetector() {
+		return leakDetector;
+	}
+
+	void setLeakVerdict(LeakVerdict leakVerdict) {
+		this.leakVerdict = leakVerdict;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+		    "Generation %d: reload took %d ms, requests blocked for %d ms "
+		            + "(%d requests, %d failed)%s",
+		    generation, getReloadTime(TimeUnit.MILLISECONDS),
+		    getRequestPause(TimeUnit.MILLISECONDS), requests, failedRequests,
+		    leakVerdict != null ? ", " + leakVerdict : "");
+	}
+
+}
@@ -0,0 +1,77 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends one request after the other to a URL until it is stopped and keeps
+ * the latency of the slowest one. A request that arrives while a context is
+ * paused for a reload waits until the reload finished, so its latency is how
+ * long requests were blocked.
+ */
+final class RequestProbe extends Thread {
+
+	private static final int TIMEOUT_MILLIS = 60000;
+
+	private final URL url;
+	private volatile boolean stopped = false;
+	private long longestRequestNanos = 0;
+	private int requests = 0;
+	private int failures = 0;
+
+	RequestProbe(URL url) {
+		super("requestProbe");
+		setDaemon(true);
+		this.url = url;
+	}
+
+	@Override
+	public void run() {
+		HttpProbeClient client =
+		        new HttpProbeClient(url.getHost(), url.getPort());
+		try {
+			while (!stopped) {
+				long start = System.nanoTime();
+				try {
+					if (client.get(url.getFile(), TIMEOUT_MILLIS,
+					    TimeUnit.MILLISECONDS) != 200) {
+						failures++;
+					}
+				} catch (IOException e) {
+					failures++;
+				}
+				longestRequestNanos = Math.max(longestRequestNanos,
+				    System.nanoTime() - start);
+				requests++;
+			}
+		} finally {
+			try {
+				client.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Stops sending requests and waits for the one in flight.
+	 */
+	void stopProbe() throws InterruptedException {
+		stopped = true;
+		join();
+	}
+
+	long getLongestRequestNanos() {
+		return longestRequestNanos;
+	}
+
+	int getRequests() {
+		return requests;
+	}
+
+	int getFailures() {
+		return failures;
+	}
+
+}
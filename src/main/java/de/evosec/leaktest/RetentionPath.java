@@ -0,0 +1,51 @@
+package de.evosec.leaktest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chain of strong references from a GC root to a retained object.
+ */
+final class RetentionPath {
+
+	private final String rootType;
+	private final List<String> objects = new ArrayList<>();
+	private final List<String> references = new ArrayList<>();
+
+	RetentionPath(String rootType, String root) {
+		this.rootType = rootType;
+		objects.add(root);
+	}
+
+	void add(String reference, String object) {
+		references.add(reference);
+		objects.add(object);
+	}
+
+	public String getRootType() {
+		return rootType;
+	}
+
+	public List<String> getObjects() {
+		return Collections.unmodifiableList(objects);
+	}
+
+	public List<String> getReferences() {
+		return Collections.unmodifiableList(references);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(objects.get(0)).append(" (GC root: ").append(rootType)
+		    .append(")");
+		for (int i = 0; i < references.size(); i++) {
+			builder.append(System.lineSeparator()).append("  ")
+			    .append(references.get(i)).append(" -> ")
+			    .append(objects.get(i + 1));
+		}
+		return builder.toString();
+	}
+
+}
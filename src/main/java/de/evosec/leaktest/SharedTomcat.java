@@ -0,0 +1,105 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * Embedded Tomcat that is started once and shared by every
+ * {@link WebAppTest} with {@link WebAppTest#sharedServer(boolean)} enabled,
+ * only the context under test is added and removed per run. A shutdown hook
+ * stops it when the JVM exits.
+ */
+public final class SharedTomcat {
+
+	// the shared server outlives the WARs it is created for
+	private static final long REQUIRED_SPACE = 512L * 1024 * 1024;
+
+	private static SharedTomcat instance;
+
+	private final Path catalinaBase;
+	private final Tomcat tomcat;
+	private final AtomicInteger deployments = new AtomicInteger();
+	private final Thread shutdownHook = new Thread("sharedTomcatShutdown") {
+
+		@Override
+		public void run() {
+			SharedTomcat.this.stop();
+		}
+
+	};
+
+	private SharedTomcat() throws IOException, LifecycleException {
+		catalinaBase = BaseDirectories.ramPreferred()
+		    .create("tomcat-classloader-leak-test", REQUIRED_SPACE);
+		tomcat = WebAppTest.createTomcat(catalinaBase);
+		try {
+			tomcat.start();
+		} catch (LifecycleException e) {
+			SharedTomcat.this.stop();
+			throw e;
+		}
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	static synchronized SharedTomcat get()
+	        throws IOException, LifecycleException {
+		if (instance == null) {
+			instance = new SharedTomcat();
+		}
+		return instance;
+	}
+
+	static synchronized boolean isRunning() {
+		return instance != null;
+	}
+
+	/**
+	 * Stops the shared Tomcat if it is running, the next shared server test
+	 * starts a new one.
+	 */
+	public static synchronized void shutdown() {
+		if (instance == null) {
+			return;
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(instance.shutdownHook);
+		} catch (IllegalStateException e) {
+			// the JVM is shutting down and the hook stops it anyway
+			return;
+		}
+		instance.stop();
+		instance = null;
+	}
+
+	Tomcat getTomcat() {
+		return tomcat;
+	}
+
+	/**
+	 * Every deployment gets its own context path, so the expanded WAR and the
+	 * work directory of an earlier deployment can never be picked up again.
+	 */
+	String nextContextName() {
+		return "/test-" + deployments.incrementAndGet();
+	}
+
+	private void stop() {
+		try {
+			tomcat.stop();
+			tomcat.destroy();
+		} catch (LifecycleException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				WebAppTest.discardBaseDirectory(catalinaBase);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
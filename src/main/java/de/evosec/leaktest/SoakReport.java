@@ -0,0 +1,165 @@
+package de.evosec.leaktest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory and latency of every deploy and undeploy cycle of a
+ * {@link SoakTest} with the growth per cycle fitted by least squares. Warm-up
+ * cycles are listed but left out of the fit.
+ */
+public final class SoakReport {
+
+	public static final class Cycle {
+
+		private final long metaspaceUsed;
+		private final long heapUsed;
+		private final long deployNanos;
+		private final long undeployNanos;
+
+		Cycle(long metaspaceUsed, long heapUsed, long deployNanos,
+		        long undeployNanos) {
+			this.metaspaceUsed = metaspaceUsed;
+			this.heapUsed = heapUsed;
+			this.deployNanos = deployNanos;
+			this.undeployNanos = undeployNanos;
+		}
+
+		/**
+		 * @return the Metaspace used after a forced collection at the end of
+		 *         the cycle
+		 */
+		public long getMetaspaceUsed() {
+			return metaspaceUsed;
+		}
+
+		/**
+		 * @return the heap used after a forced collection at the end of the
+		 *         cycle
+		 */
+		public long getHeapUsed() {
+			return heapUsed;
+		}
+
+		public long getDeployTime(TimeUnit unit) {
+			return unit.convert(deployNanos, TimeUnit.NANOSECONDS);
+		}
+
+		public long getUndeployTime(TimeUnit unit) {
+			return unit.convert(undeployNanos, TimeUnit.NANOSECONDS);
+		}
+
+	}
+
+	private final int warmUpCycles;
+	private final List<Cycle> cycles = new ArrayList<>();
+
+	SoakReport(int warmUpCycles) {
+		this.warmUpCycles = warmUpCycles;
+	}
+
+	void add(Cycle cycle) {
+		cycles.add(cycle);
+	}
+
+	public List<Cycle> getCycles() {
+		return Collections.unmodifiableList(cycles);
+	}
+
+	/**
+	 * @return the Metaspace growth in bytes per cycle
+	 */
+	public double getMetaspaceSlope() {
+		double[] values = new double[measuredCycles()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = cycles.get(warmUpCycles + i).metaspaceUsed;
+		}
+		return slope(values);
+	}
+
+	/**
+	 * @return the heap growth in bytes per cycle
+	 */
+	public double getHeapSlope() {
+		double[] values = new double[measuredCycles()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = cycles.get(warmUpCycles + i).heapUsed;
+		}
+		return slope(values);
+	}
+
+	/**
+	 * @return the change of the deploy time in milliseconds per cycle
+	 */
+	public double getDeployTimeSlope() {
+		double[] values = new double[measuredCycles()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = cycles.get(warmUpCycles + i).deployNanos / 1e6;
+		}
+		return slope(values);
+	}
+
+	/**
+	 * @return the change of the undeploy time in milliseconds per cycle
+	 */
+	public double getUndeployTimeSlope() {
+		double[] values = new double[measuredCycles()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = cycles.get(warmUpCycles + i).undeployNanos / 1e6;
+		}
+		return slope(values);
+	}
+
+	@Override
+	public String toString() {
+		String lineSeparator = System.lineSeparator();
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format(
+		    "%d cycles, growth per cycle after %d warm-up cycle(s): "
+		            + "Metaspace %+.1f KB, heap %+.1f KB, "
+		            + "deploy %+.1f ms, undeploy %+.1f ms",
+		    cycles.size(), Math.min(warmUpCycles, cycles.size()),
+		    getMetaspaceSlope() / 1024, getHeapSlope() / 1024,
+		    getDeployTimeSlope(), getUndeployTimeSlope()));
+		for (int i = 0; i < cycles.size(); i++) {
+			Cycle cycle = cycles.get(i);
+			builder.append(lineSeparator).append(String.format(
+			    "  cycle %d: Metaspace %d KB, heap %d KB, deploy %d ms, "
+			            + "undeploy %d ms",
+			    i + 1, cycle.metaspaceUsed / 1024, cycle.heapUsed / 1024,
+			    cycle.getDeployTime(TimeUnit.MILLISECONDS),
+			    cycle.getUndeployTime(TimeUnit.MILLISECONDS)));
+		}
+		return builder.toString();
+	}
+
+	private int measuredCycles() {
+		return Math.max(0, cycles.size() - warmUpCycles);
+	}
+
+	/**
+	 * Least squares slope of {@code values} over their index, {@code 0} for
+	 * less than two values.
+	 */
+	static double slope(double[] values) {
+		int n = values.length;
+		if (n < 2) {
+			return 0;
+		}
+		double meanX = (n - 1) / 2.0;
+		double meanY = 0;
+		for (double value : values) {
+			meanY += value / n;
+		}
+		double covariance = 0;
+		double variance = 0;
+		for (int i = 0; i < n; i++) {
+			covariance += (i - meanX) * (values[i] - meanY);
+			variance += (i - meanX) * (i - meanX);
+		}
+		return covariance / variance;
+	}
+
+}
@@ -0,0 +1,132 @@
+package de.evosec.leaktest;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deploys and undeploys one web application repeatedly on the
+ * {@link SharedTomcat} and fails when Metaspace or heap grow by more than a
+ * budget per cycle. This catches leaks that are too small for a single
+ * {@link WebAppTest#run()}, e.g. a cache in a parent class loader that keeps
+ * a few objects of every deployment.
+ * <p>
+ * The leak settings of the {@link WebAppTest} still apply to every cycle,
+ * disable {@link WebAppTest#testLeak(boolean)} for fast cycles. The shared
+ * server is enabled for the cycles only and shut down afterwards unless it
+ * was running before.
+ */
+public class SoakTest {
+
+	private final WebAppTest test;
+	private int cycles = 10;
+	private int warmUpCycles = 1;
+	private long metaspaceGrowthBudget = 256 * 1024;
+	private long heapGrowthBudget = 1024 * 1024;
+	private SoakReport report;
+
+	public SoakTest(WebAppTest test) {
+		this.test = test;
+	}
+
+	public SoakTest cycles(int cycles) {
+		this.cycles = cycles;
+		return this;
+	}
+
+	/**
+	 * Leaves the first cycles out of the growth fit, they load the classes
+	 * Tomcat itself needs for a deployment.
+	 */
+	public SoakTest warmUpCycles(int warmUpCycles) {
+		this.warmUpCycles = warmUpCycles;
+		return this;
+	}
+
+	/**
+	 * Bytes of Metaspace a cycle may add on average.
+	 */
+	public SoakTest metaspaceGrowthBudget(long metaspaceGrowthBudget) {
+		this.metaspaceGrowthBudget = metaspaceGrowthBudget;
+		return this;
+	}
+
+	/**
+	 * Bytes of heap a cycle may add on average.
+	 */
+	public SoakTest heapGrowthBudget(long heapGrowthBudget) {
+		this.heapGrowthBudget = heapGrowthBudget;
+		return this;
+	}
+
+	/**
+	 * @return the report of the last {@link #run()}, also after it failed
+	 */
+	public SoakReport getReport() {
+		return report;
+	}
+
+	public SoakReport run() throws WebAppTestException {
+		checkArguments();
+
+		boolean sharedServer = test.isSharedServer();
+		boolean serverRunning = SharedTomcat.isRunning();
+		test.sharedServer(true);
+		report = new SoakReport(warmUpCycles);
+		try {
+			for (int i = 0; i < cycles; i++) {
+				test.start();
+				test.stop();
+				forceCollection();
+				report.add(new SoakReport.Cycle(
+				    MemorySnapshot.take().getMetaspaceUsed(),
+				    ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+				        .getUsed(),
+				    test.getDeployTime(TimeUnit.NANOSECONDS),
+				    test.getUndeployTime(TimeUnit.NANOSECONDS)));
+			}
+		} finally {
+			test.sharedServer(sharedServer);
+			if (!serverRunning) {
+				SharedTomcat.shutdown();
+			}
+		}
+
+		if (report.getMetaspaceSlope() > metaspaceGrowthBudget) {
+			throw new WebAppTestException(String.format(
+			    "Metaspace grows by %.1f KB per cycle, budget is %d KB%n%s",
+			    report.getMetaspaceSlope() / 1024, metaspaceGrowthBudget / 1024,
+			    report));
+		}
+		if (report.getHeapSlope() > heapGrowthBudget) {
+			throw new WebAppTestException(String.format(
+			    "Heap grows by %.1f KB per cycle, budget is %d KB%n%s",
+			    report.getHeapSlope() / 1024, heapGrowthBudget / 1024, report));
+		}
+		return report;
+	}
+
+	private void checkArguments() {
+		if (cycles < 1) {
+			throw new IllegalArgumentException("cycles must be positive");
+		}
+		if (warmUpCycles < 0 || cycles - warmUpCycles < 2) {
+			throw new IllegalArgumentException(
+			    "At least two cycles after the warm-up are needed for a slope");
+		}
+		if (metaspaceGrowthBudget < 0 || heapGrowthBudget < 0) {
+			throw new IllegalArgumentException(
+			    "Growth budgets must not be negative");
+		}
+	}
+
+	/**
+	 * Two full collections, the first one may only clear references that keep
+	 * class loaders and finalizable objects alive for the second one.
+	 */
+	private static void forceCollection() {
+		System.gc();
+		System.runFinalization();
+		System.gc();
+	}
+
+}
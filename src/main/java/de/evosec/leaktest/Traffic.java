@@ -0,0 +1,211 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A request mix that concurrent clients send to the deployed web application
+ * before it is undeployed, so leaks that only show up under traffic, like
+ * thread locals on connector threads or executors and caches started on first
+ * use, are caught by the leak test.
+ * <p>
+ * Every client keeps one connection alive and picks its next path from a
+ * schedule in which every path appears as often as its weight, so the mix is
+ * exact for any number of requests. The phase ends after the given number of
+ * requests or the given duration, whichever comes first.
+ */
+public final class Traffic {
+
+	private final Map<String, Integer> paths = new LinkedHashMap<>();
+	private int clients = 4;
+	private long requests = Long.MAX_VALUE;
+	private long durationMillis = 0;
+	private long requestTimeoutMillis = 10000;
+	private boolean failOnError = true;
+
+	/**
+	 * Adds {@code path}, relative to the context path, to the mix.
+	 *
+	 * @param weight how often the path is requested relative to the others
+	 */
+	public Traffic request(String path, int weight) {
+		if (path == null) {
+			throw new IllegalArgumentException("path cannot be null");
+		}
+		if (weight < 1) {
+			throw new IllegalArgumentException("weight must be positive");
+		}
+		paths.put(path, weight);
+		return this;
+	}
+
+	public Traffic clients(int clients) {
+		this.clients = clients;
+		return this;
+	}
+
+	/**
+	 * Ends the phase after the given number of requests of all clients.
+	 */
+	public Traffic requests(long requests) {
+		this.requests = requests;
+		return this;
+	}
+
+	/**
+	 * Ends the phase after the given time.
+	 */
+	public Traffic duration(long duration, TimeUnit unit) {
+		this.durationMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	public Traffic requestTimeout(long timeout, TimeUnit unit) {
+		this.requestTimeoutMillis = unit.toMillis(timeout);
+		return this;
+	}
+
+	/**
+	 * Fails the test if a request did not answer with status 200, enabled by
+	 * default. Failed requests are counted in the {@link TrafficReport}
+	 * either way.
+	 */
+	public Traffic failOnError(boolean failOnError) {
+		this.failOnError = failOnError;
+		return this;
+	}
+
+	boolean isFailOnError() {
+		return failOnError;
+	}
+
+	void checkArguments() {
+		if (paths.isEmpty()) {
+			throw new IllegalArgumentException(
+			    "traffic needs at least one request");
+		}
+		if (clients < 1) {
+			throw new IllegalArgumentException("clients must be positive");
+		}
+		if (requests < 1) {
+			throw new IllegalArgumentException("requests must be positive");
+		}
+		if (durationMillis < 0) {
+			throw new IllegalArgumentException("duration cannot be negative");
+		}
+		if (requests == Long.MAX_VALUE && durationMillis == 0) {
+			throw new IllegalArgumentException(
+			    "traffic needs a number of requests or a duration");
+		}
+		if (requestTimeoutMillis < 1) {
+			throw new IllegalArgumentException(
+			    "requestTimeout must be positive");
+		}
+	}
+
+	/**
+	 * Sends the request mix with all clients and waits until they are done.
+	 *
+	 * @param contextPath the path the web application is deployed at
+	 */
+	TrafficReport run(String host, int port, String contextPath)
+	        throws InterruptedException {
+		checkArguments();
+		List<String> pathNames = new ArrayList<>(paths.keySet());
+		int scheduleLength = 0;
+		for (int weight : paths.values()) {
+			scheduleLength += weight;
+		}
+		final String[] schedule = new String[scheduleLength];
+		int slot = 0;
+		for (String path : pathNames) {
+			for (int i = 0; i < paths.get(path); i++) {
+				schedule[slot++] = contextPath + "/" + path;
+			}
+		}
+
+		final TrafficReport report = new TrafficReport();
+		final AtomicLong sequence = new AtomicLong();
+		final long start = System.nanoTime();
+		final long deadline = durationMillis > 0
+		        ? start + TimeUnit.MILLISECONDS.toNanos(durationMillis)
+		        : Long.MAX_VALUE;
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < clients; i++) {
+			final HttpProbeClient client = new HttpProbeClient(host, port);
+			tasks.add(new Callable<Void>() {
+
+				@Override
+				public Void call() throws IOException {
+					try {
+						long next;
+						while ((next = sequence.getAndIncrement()) < requests
+						        && (deadline == Long.MAX_VALUE
+						                || System.nanoTime() - deadline < 0)) {
+							String path = schedule[(int) (next
+							        % schedule.length)];
+							long requestStart = System.nanoTime();
+							int status = -1;
+							try {
+								status = client.get(path, requestTimeoutMillis,
+								    TimeUnit.MILLISECONDS);
+							} catch (IOException e) {
+								report.failure(path, e);
+							} catch (RuntimeException e) {
+								// the other requests of this client are still sent,
+								// the connection may be in any state, so it is not
+								// reused
+								report.failure(path, e);
+								try {
+									client.close();
+								} catch (IOException closeFailure) {
+									closeFailure.printStackTrace();
+								}
+							}
+							report.record(path, status, status != 200,
+							    System.nanoTime() - requestStart);
+						}
+					} finally {
+						report.connections(client.getConnections());
+						client.close();
+					}
+					return null;
+				}
+
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		try {
+			for (Future<Void> task : executor.invokeAll(tasks)) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					// closing the client failed, its requests are recorded
+					e.getCause().printStackTrace();
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		report.duration(System.nanoTime() - start);
+		return report;
+	}
+
+	@Override
+	public String toString() {
+		return paths + " with " + clients + " clients";
+	}
+
+}
@@ -0,0 +1,164 @@
+package de.evosec.leaktest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests sent in the {@link Traffic} or {@link AccessLogReplay} phase of a
+ * {@link WebAppTest}.
+ */
+public final class TrafficReport {
+
+	private static final int MAX_FAILURES = 10;
+	// a replayed access log can contain any number of distinct paths
+	static final int MAX_PATHS = 1000;
+	static final String OTHER_PATHS = "(other)";
+
+	private final Map<String, Long> requestsByPath = new TreeMap<>();
+	private final Map<Integer, Long> responseCodes = new TreeMap<>();
+	private final List<String> failures = new ArrayList<>();
+	private long requests;
+	private long failedRequests;
+	private long totalLatencyNanos;
+	private long maxLatencyNanos;
+	private long connections;
+	private long skippedEntries;
+	private long durationNanos;
+
+	synchronized void record(String path, int responseCode, boolean failed,
+	        long latencyNanos) {
+		requests++;
+		if (requestsByPath.size() < MAX_PATHS
+		        || requestsByPath.containsKey(path)) {
+			increment(requestsByPath, path);
+		} else {
+			increment(requestsByPath, OTHER_PATHS);
+		}
+		increment(responseCodes, responseCode);
+		if (failed) {
+			failedRequests++;
+			if (responseCode != -1 && failures.size() < MAX_FAILURES) {
+				failures.add(path + ": HTTP " + responseCode);
+			}
+		}
+		totalLatencyNanos += latencyNanos;
+		maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+	}
+
+	synchronized void failure(String path, Exception e) {
+		if (failures.size() < MAX_FAILURES) {
+			failures.add(path + ": " + e);
+		}
+	}
+
+	synchronized void connections(int connections) {
+		this.connections += connections;
+	}
+
+	synchronized void skipped() {
+		skippedEntries++;
+	}
+
+	synchronized void duration(long nanos) {
+		durationNanos = nanos;
+	}
+
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return the number of requests that failed, for {@link Traffic} every
+	 *         response other than status 200 counts, for
+	 *         {@link AccessLogReplay} only server errors do
+	 */
+	public synchronized long getFailedRequests() {
+		return failedRequests;
+	}
+
+	/**
+	 * @return the first failures, at most {@value #MAX_FAILURES}
+	 */
+	public synchronized List<String> getFailures() {
+		return Collections.unmodifiableList(new ArrayList<>(failures));
+	}
+
+	/**
+	 * @return the number of requests by path, including the context path.
+	 *         Paths beyond the first {@value #MAX_PATHS} are counted as
+	 *         {@value #OTHER_PATHS}.
+	 */
+	public synchronized Map<String, Long> getRequestsByPath() {
+		return Collections.unmodifiableMap(new TreeMap<>(requestsByPath));
+	}
+
+	/**
+	 * @return the number of responses by status, {@code -1} counts requests
+	 *         that failed without a response
+	 */
+	public synchronized Map<Integer, Long> getResponseCodes() {
+		return Collections.unmodifiableMap(new TreeMap<>(responseCodes));
+	}
+
+	/**
+	 * @return the number of connections the clients opened, one per client
+	 *         unless the server closed some
+	 */
+	public synchronized long getConnections() {
+		return connections;
+	}
+
+	/**
+	 * @return the number of access log lines that were not replayed because
+	 *         they could not be parsed or were outside the context path
+	 */
+	public synchronized long getSkippedEntries() {
+		return skippedEntries;
+	}
+
+	public synchronized long getDuration(TimeUnit unit) {
+		return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public synchronized long getMaxLatency(TimeUnit unit) {
+		return unit.convert(maxLatencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public synchronized long getMeanLatency(TimeUnit unit) {
+		return requests == 0 ? 0
+		        : unit.convert(totalLatencyNanos / requests,
+		            TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return requests per second
+	 */
+	public synchronized double getThroughput() {
+		return durationNanos == 0 ? 0
+		        : requests * (double) TimeUnit.SECONDS.toNanos(1)
+		                / durationNanos;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+		    "%d requests (%d failed) on %d connections in %d ms, %.0f/s, "
+		            + "latency mean %.2f ms, max %.2f ms, status %s",
+		    requests, failedRequests, connections,
+		    getDuration(TimeUnit.MILLISECONDS), getThroughput(),
+		    requests == 0 ? 0 : totalLatencyNanos / 1e6 / requests,
+		    maxLatencyNanos / 1e6, responseCodes)
+		        + (skippedEntries > 0
+		                ? ", " + skippedEntries + " log lines skipped" : "");
+	}
+
+	private static <K> void increment(Map<K, Long> counts, K key) {
+		Long count = counts.get(key);
+		counts.put(key, count == null ? 1 : count + 1);
+	}
+
+}
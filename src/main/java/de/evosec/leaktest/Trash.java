@@ -0,0 +1,186 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes directories off the critical path. A discarded directory is renamed
+ * into a hidden trash directory next to it right away, so the rename never
+ * crosses file systems, and deleted by a bounded fork join pool,
+ * subdirectories in parallel. The trash directory is removed once it is
+ * empty. A shutdown hook waits for pending deletions when the JVM exits.
+ */
+final class Trash {
+
+	private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+	static final String DIRECTORY_NAME = ".tomcat-classloader-leak-test-trash";
+	// another discard can remove an empty trash directory between creating
+	// it and renaming into it
+	private static final int MOVE_ATTEMPTS = 3;
+
+	private static final AtomicLong DISCARDED = new AtomicLong();
+	private static final ForkJoinPool POOL = new ForkJoinPool(
+	    Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("trashDrain") {
+
+			@Override
+			public void run() {
+				drain(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+
+		});
+	}
+
+	private Trash() {
+	}
+
+	/**
+	 * Deletes {@code directory} in the background, or right away if it cannot
+	 * be moved to the trash, e.g. because its parent is not writable or the
+	 * JVM is shutting down.
+	 *
+	 * @return {@code true} if the directory is deleted in the background
+	 */
+	static boolean discard(Path directory) throws IOException {
+		if (directory == null || !Files.exists(directory)) {
+			return false;
+		}
+		Path trashed = moveToTrash(directory.toAbsolutePath());
+		if (trashed == null) {
+			WebAppTest.delete(directory);
+			return false;
+		}
+		try {
+			POOL.execute(new DeleteAction(trashed, true));
+			return true;
+		} catch (RejectedExecutionException e) {
+			WebAppTest.delete(trashed);
+			deleteIfEmpty(trashed.getParent());
+			return false;
+		}
+	}
+
+	/**
+	 * @return the trash directory {@code directory} is renamed into
+	 */
+	static Path trashDirectory(Path directory) {
+		return directory.toAbsolutePath().resolveSibling(DIRECTORY_NAME);
+	}
+
+	/**
+	 * @return where {@code directory} was moved to or {@code null} if it
+	 *         could not be moved
+	 */
+	private static Path moveToTrash(Path directory) {
+		Path trash = trashDirectory(directory);
+		for (int attempt = 0; attempt < MOVE_ATTEMPTS; attempt++) {
+			Path trashed = trash.resolve(directory.getFileName() + "-"
+			        + DISCARDED.incrementAndGet() + "-" + System.nanoTime());
+			try {
+				Files.createDirectories(trash);
+				Files.move(directory, trashed, StandardCopyOption.ATOMIC_MOVE);
+				return trashed;
+			} catch (NoSuchFileException e) {
+				// the trash directory was removed in between
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static void deleteIfEmpty(Path trash) {
+		try {
+			Files.deleteIfExists(trash);
+		} catch (DirectoryNotEmptyException e) {
+			// other directories are still being deleted
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stops accepting new directories and waits until the pending ones are
+	 * deleted.
+	 *
+	 * @return {@code true} if all pending deletions finished in time
+	 */
+	static boolean drain(long timeout, TimeUnit unit) {
+		POOL.shutdown();
+		try {
+			return POOL.awaitTermination(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Waits until the pending deletions are finished but keeps accepting new
+	 * ones.
+	 */
+	static boolean awaitQuiescence(long timeout, TimeUnit unit) {
+		return POOL.awaitQuiescence(timeout, unit);
+	}
+
+	private static final class DeleteAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path path;
+		private final boolean root;
+
+		DeleteAction(Path path, boolean root) {
+			this.path = path;
+			this.root = root;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				if (Files.isDirectory(path) && !Files.isSymbolicLink(path)) {
+					List<DeleteAction> children = new ArrayList<>();
+					try (DirectoryStream<Path> stream =
+					        Files.newDirectoryStream(path)) {
+						for (Path child : stream) {
+							if (Files.isDirectory(child)
+							        && !Files.isSymbolicLink(child)) {
+								children.add(new DeleteAction(child, false));
+							} else {
+								Files.deleteIfExists(child);
+							}
+						}
+					}
+					invokeAll(children);
+				}
+				Files.deleteIfExists(path);
+			} catch (NoSuchFileException e) {
+				// already gone
+			} catch (IOException e) {
+				// nobody waits for the result, the rest of the tree is still
+				// deleted
+				e.printStackTrace();
+			}
+			if (root) {
+				deleteIfEmpty(path.getParent());
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Directory of exploded WARs keyed by the SHA-256 of the WAR, so the same
+ * artifact is only unpacked once across runs, redeploys and JVMs. Contexts are
+ * served straight from the cached directory, which must not be modified.
+ */
+final class WarCache {
+
+	private static final long HASH_WINDOW = 64L * 1024 * 1024;
+
+	private final Path directory;
+
+	WarCache(Path directory) {
+		this.directory = directory;
+	}
+
+	static WarCache getDefault() {
+		return new WarCache(Paths.get(System.getProperty("java.io.tmpdir"))
+		    .resolve("tomcat-classloader-leak-test-wars"));
+	}
+
+	/**
+	 * @return the exploded directory of {@code war}, unpacked now if it is not
+	 *         in the cache yet
+	 */
+	Path unpack(Path war) throws IOException {
+		Path exploded = directory.resolve(hash(war));
+		if (Files.isDirectory(exploded)) {
+			return exploded;
+		}
+
+		Files.createDirectories(directory);
+		// unpacked next to the entry and renamed, so a concurrent run never
+		// serves a partly unpacked WAR
+		Path temp = Files.createTempDirectory(directory,
+		    exploded.getFileName() + ".tmp");
+		try {
+			WarExtractor.extract(war, temp);
+			Files.move(temp, exploded, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// the rename fails if another run unpacked the same WAR first
+			if (!Files.isDirectory(exploded)) {
+				throw e;
+			}
+		} finally {
+			WebAppTest.delete(temp);
+		}
+		return exploded;
+	}
+
+	/**
+	 * Hashes the file through memory-mapped windows, so its content is not
+	 * copied to the heap.
+	 */
+	static String hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		try (FileChannel channel =
+		        FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size; position += HASH_WINDOW) {
+				MappedByteBuffer window = channel.map(
+				    FileChannel.MapMode.READ_ONLY, position,
+				    Math.min(HASH_WINDOW, size - position));
+				digest.update(window);
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+}
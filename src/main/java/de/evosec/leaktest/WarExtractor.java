@@ -0,0 +1,134 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Unpacks a WAR with a pool of workers. The central directory is read once,
+ * all directories are created up front and the entries are then inflated
+ * concurrently, each worker copying through its own direct buffer into the
+ * file channel.
+ */
+final class WarExtractor {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<ByteBuffer> BUFFER =
+	        new ThreadLocal<ByteBuffer>() {
+
+		        @Override
+		        protected ByteBuffer initialValue() {
+			        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		        }
+
+	        };
+
+	private WarExtractor() {
+	}
+
+	static void extract(Path war, Path target) throws IOException {
+		extract(war, target, Runtime.getRuntime().availableProcessors());
+	}
+
+	static void extract(Path war, final Path target, int parallelism)
+	        throws IOException {
+		final Path root = target.toAbsolutePath().normalize();
+		Files.createDirectories(root);
+		try (final ZipFile zipFile = new ZipFile(war.toFile())) {
+			List<Callable<Void>> extractions = new ArrayList<>();
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				final ZipEntry entry = entries.nextElement();
+				final Path file = resolve(root, entry);
+				if (entry.isDirectory()) {
+					Files.createDirectories(file);
+					continue;
+				}
+				Files.createDirectories(file.getParent());
+				extractions.add(new Callable<Void>() {
+
+					@Override
+					public Void call() throws IOException {
+						extract(zipFile, entry, file);
+						return null;
+					}
+
+				});
+			}
+			run(extractions, parallelism);
+		}
+	}
+
+	/**
+	 * Resolves the entry below {@code root} and rejects names that would
+	 * escape it, like {@code ../../etc/passwd}.
+	 */
+	private static Path resolve(Path root, ZipEntry entry) throws IOException {
+		Path file = root.resolve(entry.getName()).normalize();
+		if (!file.startsWith(root) || file.equals(root)) {
+			throw new IOException(
+			    "Entry outside of the target directory: " + entry.getName());
+		}
+		return file;
+	}
+
+	private static void extract(ZipFile zipFile, ZipEntry entry, Path file)
+	        throws IOException {
+		ByteBuffer buffer = BUFFER.get();
+		try (InputStream in = zipFile.getInputStream(entry);
+		        ReadableByteChannel source = Channels.newChannel(in);
+		        FileChannel out = FileChannel.open(file,
+		            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		            StandardOpenOption.TRUNCATE_EXISTING)) {
+			buffer.clear();
+			while (source.read(buffer) != -1 || buffer.position() > 0) {
+				buffer.flip();
+				out.write(buffer);
+				buffer.compact();
+			}
+		}
+	}
+
+	private static void run(List<Callable<Void>> extractions, int parallelism)
+	        throws IOException {
+		if (extractions.isEmpty()) {
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(
+		    Math.max(1, Math.min(parallelism, extractions.size())));
+		try {
+			for (Future<Void> extraction : executor.invokeAll(extractions)) {
+				extraction.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while unpacking");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -1,40 +1,39 @@
 package de.evosec.leaktest;
 
-import static com.jayway.awaitility.Awaitility.await;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryPoolMXBean;
-import java.lang.ref.WeakReference;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.UUID;
-import java.util.concurrent.Callable;
-
-import javax.servlet.ServletException;
-
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.Container;
 import org.apache.catalina.Context;
+import org.apache.catalina.Globals;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
 import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleListener;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.core.JreMemoryLeakPreventionListener;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.core.ThreadLocalLeakPreventionListener;
+import org.apache.catalina.startup.ContextConfig;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.webresources.StandardRoot;
 
-import com.jayway.awaitility.Duration;
-import com.jayway.awaitility.core.ConditionTimeoutException;
-
-import javassist.ClassPool;
-import javassist.CtClass;
 
 public class WebAppTest {
 
@@ -49,17 +48,49 @@ public class WebAppTest {
 		}
 	}
 
+	static final long LEAK_TIMEOUT_MINUTES = 2;
+	static final long PING_INITIAL_INTERVAL_MILLIS = 2;
+	// room for the expanded WAR, Jasper work files and sessions on top of the
+	// WAR itself
+	private static final long SPARE_SPACE = 64L * 1024 * 1024;
+
 	private Path catalinaBase;
 	private Path warPath;
 	private String pingEndPoint = "";
 	private long deployDuration = 10;
+	private long pingMaxInterval = 500;
 	private Path contextPath;
 	private boolean testLeak = true;
+	private double metaspaceFillRatio = 0.9;
+	private int leakProofCollections = 3;
+	private boolean heapDumpOnLeak = true;
+	private Path heapDumpDirectory;
+	private boolean sharedServer = false;
+	private int reloads = 0;
+	private boolean unpackCache = false;
+	private BaseDirectoryProvider baseDirectory =
+	        BaseDirectories.ramPreferred();
+	private boolean crawl = false;
+	private Traffic traffic;
+	private AccessLogReplay replay;
 
 	private Tomcat tomcat;
-	private DestroyListener destroyListener;
+	private String contextName;
+	private LifecycleFutures serverLifecycle;
+	private LifecycleFutures contextLifecycle;
 	private Context context;
-	private WeakReference<ClassLoader> classLoaderReference;
+	private LeakDetector leakDetector;
+	private LeakVerdict leakVerdict;
+	private FootprintReport footprintReport;
+	private List<PingAttempt> pingAttempts = new ArrayList<>();
+	private IoReport ioReport;
+	private TrafficReport crawlReport;
+	private TrafficReport trafficReport;
+	private TrafficReport replayReport;
+	private LifecycleTimeline lifecycleTimeline;
+	private List<ReloadGeneration> reloadGenerations = new ArrayList<>();
+	private long deployNanos;
+	private long undeployNanos;
 	private int port;
 
 	public WebAppTest warPath(Path warPath) {
@@ -77,6 +108,15 @@ public class WebAppTest {
 		return this;
 	}
 
+	/**
+	 * Caps the exponential backoff between two requests to the ping end point
+	 * in milliseconds, it starts at {@value #PING_INITIAL_INTERVAL_MILLIS} ms.
+	 */
+	public WebAppTest pingMaxInterval(long pingMaxInterval) {
+		this.pingMaxInterval = pingMaxInterval;
+		return this;
+	}
+
 	public WebAppTest contextPath(Path contextPath) {
 		this.contextPath = contextPath;
 		return this;
@@ -87,37 +127,231 @@ public class WebAppTest {
 		return this;
 	}
 
+	public WebAppTest metaspaceFillRatio(double metaspaceFillRatio) {
+		this.metaspaceFillRatio = metaspaceFillRatio;
+		return this;
+	}
+
+	/**
+	 * Fails the leak test as soon as the class loader survived the given
+	 * number of class unloading collections with Metaspace at its cap instead
+	 * of waiting for the timeout, {@code 0} always waits for the timeout.
+	 */
+	public WebAppTest leakProofCollections(int leakProofCollections) {
+		this.leakProofCollections = leakProofCollections;
+		return this;
+	}
+
+	public WebAppTest heapDumpOnLeak(boolean heapDumpOnLeak) {
+		this.heapDumpOnLeak = heapDumpOnLeak;
+		return this;
+	}
+
+	/**
+	 * Keeps the heap dump taken on a leak in the given directory instead of
+	 * deleting it after the report was created.
+	 */
+	public WebAppTest heapDumpDirectory(Path heapDumpDirectory) {
+		this.heapDumpDirectory = heapDumpDirectory;
+		return this;
+	}
+
+	/**
+	 * Deploys to a {@link SharedTomcat} that stays started across runs instead
+	 * of bootstrapping and destroying a server for every run.
+	 */
+	public WebAppTest sharedServer(boolean sharedServer) {
+		this.sharedServer = sharedServer;
+		return this;
+	}
+
+	/**
+	 * Reloads the context the given number of times with
+	 * {@link Context#reload()} before {@link #stop()} undeploys it. The class
+	 * loader of every replaced generation is leak tested together with the
+	 * last one.
+	 */
+	public WebAppTest reloads(int reloads) {
+		this.reloads = reloads;
+		return this;
+	}
+
+	/**
+	 * Serves the context from a directory the WAR was unpacked to once and
+	 * that is shared by every run of the same WAR content, instead of letting
+	 * Tomcat unpack it for every deployment.
+	 */
+	public WebAppTest unpackCache(boolean unpackCache) {
+		this.unpackCache = unpackCache;
+		return this;
+	}
+
+	/**
+	 * Creates catalina.base with the given provider, by default in
+	 * {@code /dev/shm} if it has enough space left. Shared server tests use
+	 * the base directory of the {@link SharedTomcat}.
+	 */
+	public WebAppTest baseDirectory(BaseDirectoryProvider baseDirectory) {
+		this.baseDirectory = baseDirectory;
+		return this;
+	}
+
+	/**
+	 * Requests every servlet mapping, filter mapping and welcome file of the
+	 * started context once, in parallel, so every servlet is initialised
+	 * before the leak test. Extension mappings are resolved to the files of
+	 * the web application. Runs before the traffic phase.
+	 */
+	public WebAppTest crawl(boolean crawl) {
+		this.crawl = crawl;
+		return this;
+	}
+
+	/**
+	 * Sends the given request mix to the web application after it answered
+	 * the ping end point, so the leak test covers what only happens under
+	 * traffic.
+	 */
+	public WebAppTest traffic(Traffic traffic) {
+		this.traffic = traffic;
+		return this;
+	}
+
+	/**
+	 * Replays the given access log against the web application after the
+	 * traffic phase.
+	 */
+	public WebAppTest replay(AccessLogReplay replay) {
+		this.replay = replay;
+		return this;
+	}
+
 	public int getPort() {
 		return port;
 	}
 
-	public void start() throws WebAppTestException {
-		checkArguments();
+	public LeakVerdict getLeakVerdict() {
+		return leakVerdict;
+	}
 
-		tomcat = null;
-		destroyListener = new DestroyListener();
-		try {
-			tomcat = getTomcatInstance();
+	/**
+	 * @return the memory snapshots of the last {@link #start()} and
+	 *         {@link #stop()}
+	 */
+	public FootprintReport getFootprintReport() {
+		return footprintReport;
+	}
+
+	/**
+	 * @return the file system work of the last {@link #start()} and
+	 *         {@link #stop()}
+	 */
+	public IoReport getIoReport() {
+		return ioReport;
+	}
+
+	/**
+	 * @return the requests to the ping end point of the last {@link #start()}
+	 */
+	public List<PingAttempt> getPingAttempts() {
+		return Collections.unmodifiableList(pingAttempts);
+	}
+
+	/**
+	 * @return the requests of the crawl of the last {@link #start()} or
+	 *         {@code null} if the mappings were not crawled
+	 */
+	public TrafficReport getCrawlReport() {
+		return crawlReport;
+	}
 
-			context = tomcat.addWebapp("/test",
-			    warPath.toAbsolutePath().toString());
+	/**
+	 * @return the requests of the traffic phase of the last {@link #start()}
+	 *         or {@code null} if no {@link Traffic} was configured
+	 */
+	public TrafficReport getTrafficReport() {
+		return trafficReport;
+	}
 
-			configureContext();
+	/**
+	 * @return the requests replayed in the last {@link #start()} or
+	 *         {@code null} if no {@link AccessLogReplay} was configured
+	 */
+	public TrafficReport getReplayReport() {
+		return replayReport;
+	}
 
-			configureTomcat();
+	/**
+	 * @return the lifecycle events of the last {@link #start()} and
+	 *         {@link #stop()}, including those of the server components unless
+	 *         the server is shared
+	 */
+	public LifecycleTimeline getLifecycleTimeline() {
+		return lifecycleTimeline;
+	}
 
-			tomcat.start();
+	/**
+	 * @return the class loader generations replaced by the reloads of the
+	 *         last {@link #stop()}
+	 */
+	public List<ReloadGeneration> getReloadGenerations() {
+		return Collections.unmodifiableList(reloadGenerations);
+	}
 
-			checkContextStarted();
+	/**
+	 * @return how long the last {@link #start()} took until the web
+	 *         application answered the ping end point
+	 */
+	public long getDeployTime(TimeUnit unit) {
+		return unit.convert(deployNanos, TimeUnit.NANOSECONDS);
+	}
 
-			classLoaderReference =
-			        new WeakReference<>(context.getLoader().getClassLoader());
+	/**
+	 * @return how long removing the context took in the last {@link #stop()},
+	 *         without the leak test
+	 */
+	public long getUndeployTime(TimeUnit unit) {
+		return unit.convert(undeployNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void start() throws WebAppTestException {
+		checkArguments();
+
+		long start = System.nanoTime();
+		deployNanos = 0;
+		undeployNanos = 0;
+		reloadGenerations = new ArrayList<>();
+		crawlReport = null;
+		trafficReport = null;
+		replayReport = null;
+
+		tomcat = null;
+		serverLifecycle = new LifecycleFutures();
+		footprintReport = new FootprintReport();
+		footprintReport.snapshot(FootprintReport.Phase.BEFORE_START);
+		try {
+			if (sharedServer) {
+				SharedTomcat sharedTomcat = SharedTomcat.get();
+				deploy(sharedTomcat.getTomcat(),
+				    sharedTomcat.nextContextName());
+			} else {
+				Tomcat tomcat = getTomcatInstance();
+				tomcat.getServer().addLifecycleListener(serverLifecycle);
+				deploy(tomcat, "/test");
+				watchServer(tomcat);
+				tomcat.start();
+			}
 
-			port = tomcat.getConnector().getLocalPort();
+			awaitDeployment();
+			deployNanos = System.nanoTime() - start;
 
-			ping(new URL("http", "localhost", port, "/test/" + pingEndPoint));
+			footprintReport.snapshot(FootprintReport.Phase.AFTER_DEPLOY);
 
-		} catch (IOException | ServletException | LifecycleException e) {
+			if (crawl || traffic != null || replay != null) {
+				sendTraffic();
+				footprintReport.snapshot(FootprintReport.Phase.AFTER_TRAFFIC);
+			}
+		} catch (IOException | LifecycleException | IllegalStateException e) {
 			shutdownTomcat();
 			throw new WebAppTestException(e);
 		}
@@ -126,13 +360,16 @@ public class WebAppTest {
 	public void stop() throws WebAppTestException {
 		try {
 			if (context != null) {
-				tomcat.getHost().removeChild(context);
-				// it is unnecessary to check whether the context was stopped
-				// since removeChild is a blocking call
-				context = null;
+				reload();
+				long start = System.nanoTime();
+				undeploy();
+				undeployNanos = System.nanoTime() - start;
+				footprintReport.snapshot(FootprintReport.Phase.AFTER_UNDEPLOY);
 			}
 
 			testLeak();
+		} catch (LifecycleException e) {
+			throw new WebAppTestException(e);
 		} finally {
 			shutdownTomcat();
 		}
@@ -147,69 +384,329 @@ public class WebAppTest {
 		}
 	}
 
-	private void checkArguments() {
+	/**
+	 * Adds the web application to {@code tomcat} as {@code contextName}, it is
+	 * started right away if the host is running already.
+	 */
+	void deploy(Tomcat tomcat, String contextName) throws IOException {
+		this.tomcat = tomcat;
+		this.contextName = contextName;
+		leakDetector = null;
+		leakVerdict = null;
+		ioReport = new IoReport();
+		contextLifecycle = new LifecycleFutures();
+		final LifecycleFutures lifecycle = contextLifecycle;
+		lifecycleTimeline = new LifecycleTimeline();
+		final LifecycleListener timeline =
+		        lifecycleTimeline.listener("Context[" + contextName + "]");
+		ioReport.baseDirectory(tomcat.getServer().getCatalinaBase().toPath());
+
+		final URL configFile =
+		        contextPath != null ? contextPath.toUri().toURL() : null;
+		long start = System.nanoTime();
+		Path docBase;
+		if (unpackCache) {
+			docBase = WarCache.getDefault().unpack(warPath);
+		} else {
+			// expanded where Tomcat would expand it, just faster
+			docBase = Paths.get(tomcat.getHost().getAppBase())
+			    .resolve(contextName.substring(1));
+			WarExtractor.extract(warPath, docBase);
+		}
+		ioReport.unpack(System.nanoTime() - start);
+		// a running host starts the context before addWebapp returns, so it
+		// has to be configured by its own lifecycle
+		context = tomcat.addWebapp(tomcat.getHost(), contextName,
+		    docBase.toString(), new ContextConfig() {
+
+			    @Override
+			    public void lifecycleEvent(LifecycleEvent event) {
+				    timeline.lifecycleEvent(event);
+				    if (Lifecycle.BEFORE_INIT_EVENT.equals(event.getType())) {
+					    configureContext((Context) event.getLifecycle(),
+					        configFile);
+				    }
+				    super.lifecycleEvent(event);
+				    lifecycle.lifecycleEvent(event);
+			    }
+
+		    });
+	}
+
+	/**
+	 * Checks that the deployed context started, starts tracking its class
+	 * loader and waits until it answers the ping end point.
+	 */
+	void awaitDeployment()
+	        throws IOException, LifecycleException, WebAppTestException {
+		checkContextStarted();
+
+		leakDetector = new LeakDetector(context.getLoader().getClassLoader(),
+		    leakProofCollections);
+
+		port = tomcat.getConnector().getLocalPort();
+
+		pingAttempts = ping(getPingUrl(), contextLifecycle.getStartedNanos());
+	}
+
+	/**
+	 * Crawls the mappings, runs the traffic phase and replays the access log,
+	 * if configured, against the started context.
+	 */
+	void sendTraffic() throws WebAppTestException {
+		try {
+			if (crawl) {
+				Set<String> paths = MappingCrawler.discover(context);
+				Traffic crawlTraffic = new Traffic().requests(paths.size())
+				    .clients(Math.min(paths.size(),
+				        Runtime.getRuntime().availableProcessors()))
+				    .requestTimeout(deployDuration, SECONDS)
+				    .failOnError(false);
+				for (String path : paths) {
+					crawlTraffic.request(path, 1);
+				}
+				crawlReport = crawlTraffic.run("localhost", port, contextName);
+			}
+			if (traffic != null) {
+				trafficReport = traffic.run("localhost", port, contextName);
+				if (traffic.isFailOnError()
+				        && trafficReport.getFailedRequests() > 0) {
+					throw new WebAppTestException("Traffic failed with "
+					        + trafficReport + ": "
+					        + trafficReport.getFailures());
+				}
+			}
+			if (replay != null) {
+				replayReport = replay.run("localhost", port, contextName);
+				if (replay.isFailOnError()
+				        && replayReport.getFailedRequests() > 0) {
+					throw new WebAppTestException("Replay failed with "
+					        + replayReport + ": "
+					        + replayReport.getFailures());
+				}
+			}
+		} catch (IOException e) {
+			throw new WebAppTestException(
+			    "Replaying " + replay.getLogFile() + " failed", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WebAppTestException("Interrupted while sending traffic",
+			    e);
+		}
+	}
+
+	private void watchServer(Tomcat tomcat) {
+		lifecycleTimeline.watch(tomcat.getServer(), "Server");
+		lifecycleTimeline.watch(tomcat.getService(),
+		    "Service[" + tomcat.getService().getName() + "]");
+		lifecycleTimeline.watch(tomcat.getEngine(),
+		    "Engine[" + tomcat.getEngine().getName() + "]");
+		lifecycleTimeline.watch(tomcat.getHost(),
+		    "Host[" + tomcat.getHost().getName() + "]");
+	}
+
+	void undeploy() throws LifecycleException {
+		if (context != null) {
+			if (context instanceof StandardContext) {
+				String workPath = ((StandardContext) context).getWorkPath();
+				ioReport.workDirectory(
+				    workPath != null ? Paths.get(workPath) : null);
+			}
+			long start = System.nanoTime();
+			tomcat.getHost().removeChild(context);
+			context = null;
+			// removeChild destroys the context before it returns unless that
+			// failed
+			if (!contextLifecycle.destroyed().isDone()) {
+				throw new LifecycleException("Context was not destroyed");
+			}
+			ioReport.undeploy(System.nanoTime() - start);
+		}
+	}
+
+	Path getWarPath() {
+		return warPath;
+	}
+
+	double getMetaspaceFillRatio() {
+		return metaspaceFillRatio;
+	}
+
+	int getReloads() {
+		return reloads;
+	}
+
+	boolean isSharedServer() {
+		return sharedServer;
+	}
+
+	boolean isTestLeak() {
+		return testLeak && leakDetector != null;
+	}
+
+	LeakDetector getLeakDetector() {
+		return leakDetector;
+	}
+
+	void setLeakVerdict(LeakVerdict leakVerdict) {
+		this.leakVerdict = leakVerdict;
+	}
+
+	void checkArguments() {
 		if (warPath == null) {
 			throw new IllegalArgumentException("warFile cannot be null");
 		}
 		if (pingEndPoint == null) {
 			throw new IllegalArgumentException("pingEndPoint cannot be null");
 		}
+		if (metaspaceFillRatio <= 0 || metaspaceFillRatio >= 1) {
+			throw new IllegalArgumentException(
+			    "metaspaceFillRatio must be between 0 and 1");
+		}
+		if (leakProofCollections < 0) {
+			throw new IllegalArgumentException(
+			    "leakProofCollections cannot be negative");
+		}
+		if (pingMaxInterval < 1) {
+			throw new IllegalArgumentException(
+			    "pingMaxInterval must be positive");
+		}
+		if (reloads < 0) {
+			throw new IllegalArgumentException("reloads cannot be negative");
+		}
+		if (baseDirectory == null) {
+			throw new IllegalArgumentException("baseDirectory cannot be null");
+		}
+		if (traffic != null) {
+			traffic.checkArguments();
+		}
+		if (replay != null) {
+			replay.checkArguments();
+		}
 		if (!Files.exists(warPath)) {
 			throw new IllegalArgumentException(
 			    "WAR file does not exist: " + warPath);
 		}
 	}
 
+	private URL getPingUrl() throws IOException {
+		return new URL("http", "localhost", port,
+		    contextName + "/" + pingEndPoint);
+	}
+
+	/**
+	 * Reloads the context while a probe keeps sending requests to it and
+	 * starts tracking the class loader of every new generation.
+	 */
+	private void reload() throws WebAppTestException {
+		for (int i = 1; i <= reloads; i++) {
+			try {
+				RequestProbe probe = new RequestProbe(getPingUrl());
+				probe.start();
+				long start = System.nanoTime();
+				try {
+					context.reload();
+				} finally {
+					probe.stopProbe();
+				}
+				reloadGenerations.add(new ReloadGeneration(i, leakDetector,
+				    System.nanoTime() - start, probe));
+
+				checkContextStarted();
+				leakDetector = new LeakDetector(
+				    context.getLoader().getClassLoader(), leakProofCollections);
+				ping(getPingUrl(), System.nanoTime());
+			} catch (IOException | LifecycleException
+			        | IllegalStateException e) {
+				throw new WebAppTestException(
+				    "Reload " + i + " failed: " + e.getMessage(), e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new WebAppTestException("Interrupted during reload " + i,
+				    e);
+			}
+		}
+	}
+
 	private void checkContextStarted() throws LifecycleException {
+		LifecycleFutures.await(contextLifecycle.started(),
+		    "the context is started", deployDuration, SECONDS);
 		if (context.getState() != LifecycleState.STARTED) {
 			throw new LifecycleException(
 			    "Context state is not STARTED but " + context.getStateName());
 		}
 	}
 
-	private void configureTomcat() {
-		tomcat.getServer()
-		    .addLifecycleListener(new JreMemoryLeakPreventionListener());
-		tomcat.getServer()
-		    .addLifecycleListener(new ThreadLocalLeakPreventionListener());
-		tomcat.getServer().addLifecycleListener(destroyListener);
-	}
-
-	private void shutdownTomcat() throws WebAppTestException {
+	void shutdownTomcat() throws WebAppTestException {
+		if (sharedServer) {
+			removeSharedContext();
+			return;
+		}
 		try {
-			Callable<Boolean> contextIsDestroyed = new Callable<Boolean>() {
-
-				@Override
-				public Boolean call() throws Exception {
-					return destroyListener.isDestroyed()
-					        && destroyListener.isStopped();
-				}
-
-			};
-			if (tomcat != null && !contextIsDestroyed.call()) {
+			CompletableFuture<Void> serverIsDestroyed =
+			        CompletableFuture.allOf(serverLifecycle.stopped(),
+			            serverLifecycle.destroyed());
+			if (tomcat != null && !serverIsDestroyed.isDone()) {
 				tomcat.stop();
 				tomcat.destroy();
-				await().atMost(Duration.ONE_MINUTE).until(contextIsDestroyed);
+				LifecycleFutures.await(serverIsDestroyed,
+				    "the server is destroyed", 1, TimeUnit.MINUTES);
 			}
 		} catch (Exception e) {
 			throw new WebAppTestException(e);
 		} finally {
-			try {
-				delete(catalinaBase);
-			} catch (IOException e) {
-				e.printStackTrace();
+			// run() shuts down again after stop(), which must not overwrite
+			// the teardown time of the real discard
+			if (catalinaBase != null) {
+				try {
+					long start = System.nanoTime();
+					discardBaseDirectory(catalinaBase);
+					if (ioReport != null) {
+						ioReport.teardown(System.nanoTime() - start);
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				} finally {
+					catalinaBase = null;
+				}
 			}
 		}
 	}
 
-	private void configureContext() throws MalformedURLException {
+	/**
+	 * Removes the context if it is still deployed, for example because it
+	 * failed to start, and discards the directory the WAR was expanded to. The
+	 * work directory is deleted by Tomcat while the server keeps running.
+	 */
+	private void removeSharedContext() {
+		if (tomcat == null) {
+			return;
+		}
+		Container child = tomcat.getHost().findChild(contextName);
+		if (child != null) {
+			tomcat.getHost().removeChild(child);
+		}
+		try {
+			long start = System.nanoTime();
+			Trash.discard(Paths.get(tomcat.getHost().getAppBase())
+			    .resolve(contextName.substring(1)));
+			if (ioReport != null) {
+				ioReport.teardown(System.nanoTime() - start);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		tomcat = null;
+	}
+
+	private void configureContext(Context context, URL configFile) {
 		StandardRoot resources = new StandardRoot(context);
 		resources.setCachingAllowed(false);
 
 		context.setResources(resources);
 
-		if (contextPath != null) {
-			context.setConfigFile(contextPath.toUri().toURL());
+		if (configFile != null) {
+			context.setConfigFile(configFile);
 		}
 
 		if (context instanceof StandardContext) {
@@ -220,84 +717,166 @@ public class WebAppTest {
 		}
 	}
 
-	private void ping(final URL url) throws WebAppTestException {
-		try {
-			await().atMost(new Duration(deployDuration, SECONDS))
-			    .pollInterval(Duration.ONE_SECOND)
-			    .until(new Callable<Boolean>() {
-
-				    @Override
-				    public Boolean call() throws Exception {
-					    URLConnection connection = url.openConnection();
-					    if (connection instanceof HttpURLConnection) {
-						    HttpURLConnection httpConnection =
-						            (HttpURLConnection) connection;
-						    return httpConnection.getResponseCode() == 200;
-					    }
-					    return false;
-				    }
-			    });
-		} catch (ConditionTimeoutException e) {
+	/**
+	 * Requests {@code url} until it answers with 200 or the deploy duration
+	 * elapsed, doubling the pause between two requests up to the ping max
+	 * interval.
+	 *
+	 * @param origin the {@link System#nanoTime()} the attempts are timed from
+	 */
+	private List<PingAttempt> ping(URL url, long origin)
+	        throws WebAppTestException {
+		List<PingAttempt> attempts = new ArrayList<>();
+		long deadline = System.nanoTime() + SECONDS.toNanos(deployDuration);
+		long interval = PING_INITIAL_INTERVAL_MILLIS;
+		try (HttpProbeClient client =
+		        new HttpProbeClient(url.getHost(), url.getPort())) {
+			while (true) {
+				PingAttempt attempt =
+				        ping(client, url.getFile(), origin, deadline);
+				attempts.add(attempt);
+				if (attempt.isSuccessful()) {
+					return attempts;
+				}
+
+				long remaining = TimeUnit.NANOSECONDS
+				    .toMillis(deadline - System.nanoTime());
+				if (remaining <= 0) {
+					throw new WebAppTestException(
+					    "Web application not properly deployed, "
+					            + attempts.size() + " requests to " + url
+					            + ", last one at " + attempt);
+				}
+				Thread.sleep(Math.min(interval, remaining));
+				interval = Math.min(interval * 2, pingMaxInterval);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			throw new WebAppTestException(
-			    "Web application not properly deployed", e);
+			    "Interrupted while waiting for " + url, e);
+		} catch (IOException e) {
+			// only closing the client can fail here
+			throw new WebAppTestException(e);
+		}
+	}
+
+	private static PingAttempt ping(HttpProbeClient client, String path,
+	        long origin, long deadline) {
+		long start = System.nanoTime();
+		int responseCode = -1;
+		String failure = null;
+		try {
+			responseCode = client.get(path, Math.max(1, deadline - start),
+			    TimeUnit.NANOSECONDS);
+		} catch (IOException e) {
+			failure = e.toString();
 		}
+		return new PingAttempt(start - origin, System.nanoTime() - start,
+		    responseCode, failure);
 	}
 
 	private void testLeak() throws WebAppTestException {
-		if (!testLeak || classLoaderReference == null) {
+		if (!isTestLeak()) {
 			return;
 		}
 
-		Callable<Boolean> classLoaderReferenceIsNull = new Callable<Boolean>() {
-
-			@Override
-			public Boolean call() throws Exception {
-				return classLoaderReference.get() == null;
-			}
-
-		};
-
-		System.gc();
-
-		createClassesUntil(classLoaderReferenceIsNull);
+		List<LeakDetector> detectors = new ArrayList<>();
+		for (ReloadGeneration generation : reloadGenerations) {
+			detectors.add(generation.getLeakDetector());
+		}
+		detectors.add(leakDetector);
 
+		List<LeakVerdict> verdicts;
+		MetaspacePressure pressure = new MetaspacePressure(metaspaceFillRatio);
 		try {
-			await().atMost(Duration.TWO_MINUTES)
-			    .until(classLoaderReferenceIsNull);
-		} catch (ConditionTimeoutException e) {
-			throw new WebAppTestException("ClassLoader not GC'ed", e);
+			verdicts = LeakDetector.awaitVerdicts(detectors, pressure,
+			    LEAK_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WebAppTestException(
+			    "Interrupted while waiting for ClassLoader to be GC'ed", e);
+		} finally {
+			pressure.close();
 		}
-	}
 
-	private void createClassesUntil(
-	        final Callable<Boolean> classLoaderReferenceIsNull) {
-		final ClassLoader classLoader = DummyClassLoader.newInstance();
-		final ClassPool pool = ClassPool.getDefault();
-		new Thread("classCreator") {
+		// counted before the snapshot, so every unloaded filler class is
+		// included in its unloaded class count
+		long unloadedFillerClasses = pressure.getUnloadedClasses();
+		footprintReport.snapshot(FootprintReport.Phase.AFTER_VERDICT);
+		footprintReport.fillerClasses(pressure.getDefinedClasses(),
+		    unloadedFillerClasses);
+
+		StringBuilder leakedGenerations = new StringBuilder();
+		for (int i = 0; i < reloadGenerations.size(); i++) {
+			ReloadGeneration generation = reloadGenerations.get(i);
+			generation.setLeakVerdict(verdicts.get(i));
+			if (!verdicts.get(i).isCollected()) {
+				leakedGenerations.append(System.lineSeparator())
+				    .append(generation);
+			}
+		}
+		leakVerdict = verdicts.get(verdicts.size() - 1);
+		if (leakedGenerations.length() > 0) {
+			throw new WebAppTestException("Reloads leaked class loaders:"
+			        + leakedGenerations + describeRetention());
+		}
+		if (!leakVerdict.isCollected()) {
+			throw new WebAppTestException(leakVerdict + describeRetention());
+		}
+	}
 
-			@Override
-			public void run() {
+	/**
+	 * Dumps the heap and describes how all stopped web application class
+	 * loaders in it are retained, if heap dumps are enabled for this test.
+	 */
+	String describeRetention() {
+		if (!heapDumpOnLeak) {
+			return "";
+		}
+		String lineSeparator = System.lineSeparator();
+		Path heapDumpFile = null;
+		try {
+			Path directory = heapDumpDirectory != null ? heapDumpDirectory
+			        : Paths.get(System.getProperty("java.io.tmpdir"));
+			Files.createDirectories(directory);
+			heapDumpFile = directory.resolve(
+			    "tomcat-classloader-leak-test-" + System.nanoTime() + ".hprof");
+			HeapDump.write(heapDumpFile);
+			String report = LeakReport.create(heapDumpFile);
+			if (heapDumpDirectory != null) {
+				report += lineSeparator + "Heap dump: " + heapDumpFile;
+			}
+			return lineSeparator + report;
+		} catch (IOException | RuntimeException e) {
+			return lineSeparator + "Heap dump analysis failed: " + e;
+		} finally {
+			if (heapDumpDirectory == null && heapDumpFile != null) {
 				try {
-					while (!classLoaderReferenceIsNull.call()) {
-						CtClass makeClass =
-						        pool.makeClass("de.test." + UUID.randomUUID());
-						makeClass.toClass(classLoader,
-						    this.getClass().getProtectionDomain());
-					}
-				} catch (Exception e) {
+					Files.deleteIfExists(heapDumpFile);
+				} catch (IOException e) {
 					e.printStackTrace();
 				}
 			}
-
-		}.start();
+		}
 	}
 
 	private Tomcat getTomcatInstance() throws IOException {
-		catalinaBase =
-		        Files.createTempDirectory("tomcat-classloader-leak-test");
+		catalinaBase = baseDirectory.create("tomcat-classloader-leak-test",
+		    requiredSpace(warPath));
 
 		delete(catalinaBase);
 
+		return createTomcat(catalinaBase);
+	}
+
+	/**
+	 * @return the space a base directory needs for deploying {@code warPath}
+	 */
+	static long requiredSpace(Path warPath) throws IOException {
+		return 2 * Files.size(warPath) + SPARE_SPACE;
+	}
+
+	static Tomcat createTomcat(Path catalinaBase) throws IOException {
 		Path appBase = catalinaBase.resolve("webapps");
 		Files.createDirectories(appBase);
 
@@ -309,10 +888,38 @@ public class WebAppTest {
 
 		tomcat.enableNaming();
 
+		tomcat.getServer()
+		    .addLifecycleListener(new JreMemoryLeakPreventionListener());
+		tomcat.getServer()
+		    .addLifecycleListener(new ThreadLocalLeakPreventionListener());
+
 		return tomcat;
 	}
 
-	private static void delete(Path file) throws IOException {
+	/**
+	 * Discards the catalina.base of a destroyed server. The first server
+	 * stores its base directory in the {@code catalina.base} and
+	 * {@code catalina.home} system properties, and every later server
+	 * recreates the home directory, so they are cleared if they still point
+	 * to it.
+	 */
+	static void discardBaseDirectory(Path catalinaBase) throws IOException {
+		if (catalinaBase == null) {
+			return;
+		}
+		Path path = Files.exists(catalinaBase) ? catalinaBase.toRealPath()
+		        : catalinaBase.toAbsolutePath();
+		for (String property : new String[] { Globals.CATALINA_BASE_PROP,
+		    Globals.CATALINA_HOME_PROP }) {
+			String value = System.getProperty(property);
+			if (value != null && path.equals(Paths.get(value))) {
+				System.clearProperty(property);
+			}
+		}
+		Trash.discard(catalinaBase);
+	}
+
+	static void delete(Path file) throws IOException {
 		if (file == null || !Files.exists(file)) {
 			return;
 		}
@@ -0,0 +1,216 @@
+package de.evosec.leaktest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * Leak tests several web applications in one Tomcat. The contexts are
+ * started and stopped in parallel and share a single Metaspace pressure phase
+ * for their leak verdicts, so a batch costs about as much as one
+ * {@link WebAppTest#run()}.
+ * <p>
+ * The WAR, ping end point, deploy duration, context configuration, traffic
+ * and leak settings of every added {@link WebAppTest} are used, its verdict
+ * is available from {@link WebAppTest#getLeakVerdict()} afterwards. The
+ * Metaspace fill ratio is set for the whole batch with
+ * {@link #metaspaceFillRatio(double)}. Reloads and the shared server are not
+ * supported, tests using them are rejected.
+ */
+public class WebAppTestBatch {
+
+	private final List<WebAppTest> tests = new ArrayList<>();
+	private double metaspaceFillRatio = 0.9;
+	private BaseDirectoryProvider baseDirectory =
+	        BaseDirectories.ramPreferred();
+
+	public WebAppTestBatch add(WebAppTest test) {
+		tests.add(test);
+		return this;
+	}
+
+	public WebAppTestBatch metaspaceFillRatio(double metaspaceFillRatio) {
+		this.metaspaceFillRatio = metaspaceFillRatio;
+		return this;
+	}
+
+	public WebAppTestBatch baseDirectory(
+	        BaseDirectoryProvider baseDirectory) {
+		this.baseDirectory = baseDirectory;
+		return this;
+	}
+
+	public void run() throws WebAppTestException {
+		checkArguments();
+
+		Path catalinaBase = null;
+		Tomcat tomcat = null;
+		ExecutorService executor = Executors.newFixedThreadPool(tests.size());
+		try {
+			long requiredSpace = 0;
+			for (WebAppTest test : tests) {
+				requiredSpace += WebAppTest.requiredSpace(test.getWarPath());
+			}
+			catalinaBase = baseDirectory.create("tomcat-classloader-leak-test",
+			    requiredSpace);
+			tomcat = WebAppTest.createTomcat(catalinaBase);
+			tomcat.getHost().setStartStopThreads(tests.size());
+			for (int i = 0; i < tests.size(); i++) {
+				tests.get(i).deploy(tomcat, "/test-" + (i + 1));
+			}
+			tomcat.start();
+
+			for (WebAppTest test : tests) {
+				try {
+					test.awaitDeployment();
+					test.sendTraffic();
+				} catch (IOException | LifecycleException e) {
+					throw new WebAppTestException(test.getWarPath() + ": " + e,
+					    e);
+				} catch (WebAppTestException e) {
+					throw new WebAppTestException(
+					    test.getWarPath() + ": " + e.getMessage(), e);
+				}
+			}
+
+			undeploy(executor);
+
+			testLeaks();
+		} catch (IOException | LifecycleException | IllegalStateException e) {
+			throw new WebAppTestException(e);
+		} finally {
+			executor.shutdownNow();
+			shutdownTomcat(tomcat, catalinaBase);
+		}
+	}
+
+	private void checkArguments() {
+		if (tests.isEmpty()) {
+			throw new IllegalArgumentException("No web application added");
+		}
+		if (metaspaceFillRatio <= 0 || metaspaceFillRatio >= 1) {
+			throw new IllegalArgumentException(
+			    "metaspaceFillRatio must be between 0 and 1");
+		}
+		if (baseDirectory == null) {
+			throw new IllegalArgumentException("baseDirectory cannot be null");
+		}
+		for (WebAppTest test : tests) {
+			test.checkArguments();
+			if (test.getReloads() > 0) {
+				throw new IllegalArgumentException(test.getWarPath()
+				        + ": reloads are not supported in a batch");
+			}
+			if (test.isSharedServer()) {
+				throw new IllegalArgumentException(test.getWarPath()
+				        + ": a batch cannot use the shared server");
+			}
+			if (test.getMetaspaceFillRatio() != metaspaceFillRatio) {
+				throw new IllegalArgumentException(test.getWarPath()
+				        + ": the batch shares one pressure phase, set "
+				        + "metaspaceFillRatio on the batch instead");
+			}
+		}
+	}
+
+	private void undeploy(ExecutorService executor)
+	        throws WebAppTestException {
+		List<Callable<Void>> undeployments = new ArrayList<>();
+		for (final WebAppTest test : tests) {
+			undeployments.add(new Callable<Void>() {
+
+				@Override
+				public Void call() throws LifecycleException {
+					test.undeploy();
+					return null;
+				}
+
+			});
+		}
+		try {
+			for (Future<Void> undeployment : executor
+			    .invokeAll(undeployments)) {
+				undeployment.get();
+			}
+		} catch (ExecutionException e) {
+			throw new WebAppTestException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WebAppTestException(
+			    "Interrupted while undeploying web applications", e);
+		}
+	}
+
+	private void testLeaks() throws WebAppTestException {
+		List<WebAppTest> leakTests = new ArrayList<>();
+		List<LeakDetector> detectors = new ArrayList<>();
+		for (WebAppTest test : tests) {
+			if (test.isTestLeak()) {
+				leakTests.add(test);
+				detectors.add(test.getLeakDetector());
+			}
+		}
+		if (detectors.isEmpty()) {
+			return;
+		}
+
+		List<LeakVerdict> verdicts;
+		MetaspacePressure pressure = new MetaspacePressure(metaspaceFillRatio);
+		try {
+			verdicts = LeakDetector.awaitVerdicts(detectors, pressure,
+			    WebAppTest.LEAK_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WebAppTestException(
+			    "Interrupted while waiting for ClassLoaders to be GC'ed", e);
+		} finally {
+			pressure.close();
+		}
+
+		StringBuilder leaks = new StringBuilder();
+		WebAppTest leaked = null;
+		for (int i = 0; i < leakTests.size(); i++) {
+			WebAppTest test = leakTests.get(i);
+			LeakVerdict verdict = verdicts.get(i);
+			test.setLeakVerdict(verdict);
+			if (!verdict.isCollected()) {
+				leaks.append(System.lineSeparator()).append(test.getWarPath())
+				    .append(": ").append(verdict);
+				leaked = test;
+			}
+		}
+		if (leaked != null) {
+			// one heap dump shows all stopped class loaders of the batch
+			throw new WebAppTestException(
+			    "Leaked web applications:" + leaks + leaked.describeRetention());
+		}
+	}
+
+	private static void shutdownTomcat(Tomcat tomcat, Path catalinaBase) {
+		try {
+			if (tomcat != null) {
+				tomcat.stop();
+				tomcat.destroy();
+			}
+		} catch (LifecycleException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				WebAppTest.discardBaseDirectory(catalinaBase);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AccessLogReplayTest {
+
+	private static final String[] LOG = {
+	    "127.0.0.1 - - [18/Oct/2016:10:00:00 +0200] \"GET /shop/ HTTP/1.1\" 200 52",
+	    "127.0.0.1 - - [18/Oct/2016:10:00:01 +0200] \"GET /shop/index.jsp?q=1 HTTP/1.1\" 200 52",
+	    "127.0.0.1 - - [18/Oct/2016:10:00:01 +0200] \"GET /other/ HTTP/1.1\" 200 10",
+	    "127.0.0.1 - - [18/Oct/2016:10:00:02 +0200] \"-\" 408 -",
+	    "not an access log line",
+	    "127.0.0.1 - - [18/Oct/2016:10:00:02 +0200] \"HEAD /shop/index.jsp HTTP/1.1\" 200 -",
+	    "127.0.0.1 - - [18/Oct/2016:10:00:03 +0200] \"POST /shop/index.jsp HTTP/1.1\" 200 52 \"-\" \"curl/7.50\"" };
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testParse() {
+		AccessLogReplay.Request request = AccessLogReplay.parse(LOG[1], "/shop");
+		assertEquals("GET", request.method);
+		assertEquals("/index.jsp?q=1", request.target);
+		assertEquals(1476777601000L, request.timestamp);
+
+		assertEquals("/shop/", AccessLogReplay.parse(LOG[0], "").target);
+		assertEquals("/?a", AccessLogReplay.parse(
+		    "h - - [18/Oct/2016:10:00:00 +0000] \"GET /shop?a HTTP/1.1\" 200 1",
+		    "/shop").target);
+		assertEquals("/x", AccessLogReplay.parse(
+		    "h - - [18/Oct/2016:10:00:00 +0000] \"GET http://host:80/shop/x HTTP/1.1\" 200 1",
+		    "/shop").target);
+		assertNull(AccessLogReplay.parse(
+		    "h - - [18/Oct/2016:10:00:00 +0000] \"GET /shopping HTTP/1.1\" 200 1",
+		    "/shop"));
+		assertNull(AccessLogReplay.parse(LOG[2], "/shop"));
+		assertNull(AccessLogReplay.parse(LOG[3], "/shop"));
+		assertNull(AccessLogReplay.parse(LOG[4], "/shop"));
+	}
+
+	@Test
+	public void testReplay() throws Exception {
+		Path log = temporaryFolder.getRoot().toPath().resolve("access.log.gz");
+		try (OutputStream out = Files.newOutputStream(log);
+		        Writer writer = new OutputStreamWriter(new GZIPOutputStream(out),
+		            StandardCharsets.UTF_8)) {
+			for (String line : LOG) {
+				writer.write(line + "\n");
+			}
+		}
+
+		WebAppTest webAppTest = new WebAppTest()
+		    .warPath(Paths.get(Thread.currentThread().getContextClassLoader()
+		        .getResource("webapp-test-working.war").toURI()))
+		    .replay(new AccessLogReplay(log).contextPath("/shop").speed(10)
+		        .clients(2).failOnError(true));
+		webAppTest.run();
+
+		TrafficReport report = webAppTest.getReplayReport();
+		assertEquals(report.toString(), 4, report.getRequests());
+		assertEquals(0, report.getFailedRequests());
+		assertEquals(3, report.getSkippedEntries());
+		assertEquals(Long.valueOf(1), report.getRequestsByPath().get("/test/"));
+		assertEquals(Long.valueOf(3),
+		    report.getRequestsByPath().get("/test/index.jsp"));
+		// the log spans three seconds
+		assertTrue(report.toString(),
+		    report.getDuration(TimeUnit.MILLISECONDS) >= 250);
+		assertTrue(webAppTest.getLeakVerdict().isCollected());
+	}
+
+}
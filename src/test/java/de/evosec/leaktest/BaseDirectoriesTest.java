@@ -0,0 +1,38 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class BaseDirectoriesTest {
+
+	@Test
+	public void testRamPreferred() throws Exception {
+		Path ram = Files.createTempDirectory("ram");
+		try {
+			Path directory = BaseDirectories.ramPreferred(ram).create("base",
+			    Files.getFileStore(ram).getUsableSpace() / 2);
+			assertEquals(ram, directory.getParent());
+		} finally {
+			WebAppTest.delete(ram);
+		}
+	}
+
+	@Test
+	public void testFallbackToTemp() throws Exception {
+		Path ram = Files.createTempDirectory("ram");
+		Path directory = null;
+		try {
+			directory = BaseDirectories.ramPreferred(ram).create("base",
+			    Long.MAX_VALUE);
+			assertEquals(ram.getParent(), directory.getParent());
+		} finally {
+			WebAppTest.delete(ram);
+			WebAppTest.delete(directory);
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HeapDumpTest {
+
+	@ClassRule
+	public static TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static final int FILLER_CLASSES = 8;
+
+	private static DummyClassLoader retained;
+	private static Path heapDumpFile;
+
+	@BeforeClass
+	public static void dumpHeap() throws Exception {
+		retained = DummyClassLoader.newInstance();
+		retained.defineFillerClasses(FILLER_CLASSES);
+		heapDumpFile = temporaryFolder.getRoot().toPath().resolve("test.hprof");
+		HeapDump.write(heapDumpFile);
+	}
+
+	@AfterClass
+	public static void release() {
+		retained = null;
+	}
+
+	@Test
+	public void testFindInstances() throws Exception {
+		try (HeapDump heapDump = HeapDump.open(heapDumpFile)) {
+			LongLongMap instances = LeakReport.findInstances(heapDump,
+			    DummyClassLoader.class.getName(), false);
+			assertEquals(1, instances.size());
+		}
+	}
+
+	@Test
+	public void testRetentionPath() throws Exception {
+		try (HeapDump heapDump = HeapDump.open(heapDumpFile)) {
+			LongLongMap instances = LeakReport.findInstances(heapDump,
+			    DummyClassLoader.class.getName(), false);
+			RetentionPath path;
+			try (ObjectIndex index = ObjectIndex.build(heapDump,
+			    temporaryFolder.getRoot().toPath())) {
+				path = new GcRootPathFinder(heapDump, index).find(instances);
+			}
+			assertNotNull(path);
+			List<String> references = path.getReferences();
+			assertEquals("static retained",
+			    references.get(references.size() - 1));
+			List<String> objects = path.getObjects();
+			assertTrue(objects.get(objects.size() - 1)
+			    .startsWith(DummyClassLoader.class.getName() + "@0x"));
+		}
+	}
+
+	@Test
+	public void testObjectIndex() throws Exception {
+		try (HeapDump heapDump = HeapDump.open(heapDumpFile);
+		        ObjectIndex index = ObjectIndex.build(heapDump,
+		            temporaryFolder.getRoot().toPath())) {
+			LongLongMap instances = LeakReport.findInstances(heapDump,
+			    DummyClassLoader.class.getName(), false);
+			long objectId = instances.keys()[0];
+			int objectIndex = index.indexOf(objectId);
+			assertEquals(objectId, index.id(objectIndex));
+			assertEquals(instances.get(objectId, 0), index.offset(objectIndex));
+			assertEquals(DummyClassLoader.class.getName(),
+			    heapDump.className(index.classId(objectIndex)));
+			assertEquals(-1, index.indexOf(1));
+			assertTrue(index.roots().length > 0);
+			assertTrue(index.edgeCount() > index.size());
+		}
+	}
+
+	@Test
+	public void testChunkedIndex() throws Exception {
+		Path directory = temporaryFolder.getRoot().toPath();
+		try (HeapDump heapDump = HeapDump.open(heapDumpFile, Long.MAX_VALUE, 1);
+		        HeapDump chunked = HeapDump.open(heapDumpFile, 64 * 1024, 4);
+		        ObjectIndex index = ObjectIndex.build(heapDump, directory);
+		        ObjectIndex chunkedIndex =
+		                ObjectIndex.build(chunked, directory)) {
+			assertTrue(chunked.chunkCount() > heapDump.chunkCount());
+			assertEquals(index.size(), chunkedIndex.size());
+			assertEquals(index.edgeCount(), chunkedIndex.edgeCount());
+			for (int i = 0; i < index.size(); i++) {
+				assertEquals(index.id(i), chunkedIndex.id(i));
+				assertEquals(index.edgeStart(i), chunkedIndex.edgeStart(i));
+			}
+			for (long edge = 0; edge < index.edgeCount(); edge++) {
+				assertEquals(index.edge(edge), chunkedIndex.edge(edge));
+			}
+		}
+	}
+
+	@Test
+	public void testDominatorTree() throws Exception {
+		try (HeapDump heapDump = HeapDump.open(heapDumpFile);
+		        ObjectIndex index = ObjectIndex.build(heapDump,
+		            temporaryFolder.getRoot().toPath())) {
+			DominatorTree dominatorTree = new DominatorTree(index);
+			long loaderId = LeakReport.findInstances(heapDump,
+			    DummyClassLoader.class.getName(), false).keys()[0];
+			int loader = index.indexOf(loaderId);
+			long fillerClassSizes = 0;
+			int fillerClasses = 0;
+			for (long classId : heapDump.classIds()) {
+				if (heapDump.classInfo(classId).loaderId != loaderId) {
+					continue;
+				}
+				int fillerClass = index.indexOf(classId);
+				int dominator = dominatorTree.immediateDominator(fillerClass);
+				while (dominator >= 0 && dominator != loader) {
+					dominator = dominatorTree.immediateDominator(dominator);
+				}
+				assertEquals(loader, dominator);
+				fillerClassSizes += index.shallowSize(fillerClass);
+				fillerClasses++;
+			}
+			assertEquals(FILLER_CLASSES, fillerClasses);
+			assertTrue(dominatorTree.retainedSize(loader) > index
+			    .shallowSize(loader) + fillerClassSizes);
+			assertTrue(dominatorTree.reachableSize() > dominatorTree
+			    .retainedSize(loader));
+		}
+	}
+
+	@Test
+	public void testNoStoppedWebappClassLoader() throws Exception {
+		assertTrue(LeakReport.create(heapDumpFile)
+		    .startsWith("No stopped web application class loader"));
+	}
+
+}
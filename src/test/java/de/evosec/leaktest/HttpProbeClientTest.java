@@ -0,0 +1,86 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpProbeClientTest {
+
+	private HttpServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/fixed", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = new byte[20000];
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+
+		});
+		server.createContext("/chunked", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(404, 0);
+				try (OutputStream out = exchange.getResponseBody()) {
+					for (int i = 0; i < 10; i++) {
+						out.write(new byte[1000]);
+						out.flush();
+					}
+				}
+			}
+
+		});
+		server.createContext("/close", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().set("Connection", "close");
+				exchange.sendResponseHeaders(503, -1);
+				exchange.close();
+			}
+
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testKeepAlive() throws Exception {
+		try (HttpProbeClient client = new HttpProbeClient("localhost",
+		    server.getAddress().getPort())) {
+			for (int i = 0; i < 5; i++) {
+				assertEquals(200, client.get("/fixed", 10, TimeUnit.SECONDS));
+				assertEquals(404,
+				    client.get("/chunked", 10, TimeUnit.SECONDS));
+			}
+			assertEquals(1, client.getConnections());
+
+			assertEquals(503, client.get("/close", 10, TimeUnit.SECONDS));
+			assertEquals(200, client.get("/fixed", 10, TimeUnit.SECONDS));
+			assertEquals(2, client.getConnections());
+		}
+	}
+
+}
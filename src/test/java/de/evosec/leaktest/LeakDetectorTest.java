@@ -0,0 +1,45 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LeakDetectorTest {
+
+	@Test
+	public void testProvenLeak() throws Exception {
+		ClassLoader classLoader = DummyClassLoader.newInstance();
+		LeakDetector leakDetector = new LeakDetector(classLoader, 3);
+		LeakVerdict verdict = awaitVerdict(leakDetector);
+		assertFalse(verdict.toString(), verdict.isCollected());
+		assertTrue(verdict.toString(), verdict.isProvenLeak());
+		assertTrue(verdict.toString(), verdict.getCollectionsAtCap() >= 3);
+		assertTrue(verdict.getDuration(TimeUnit.MINUTES) < 1);
+		// keeps the class loader strongly reachable until here
+		assertNotNull(classLoader);
+	}
+
+	@Test
+	public void testCollected() throws Exception {
+		LeakDetector leakDetector =
+		        new LeakDetector(DummyClassLoader.newInstance(), 3);
+		LeakVerdict verdict = awaitVerdict(leakDetector);
+		assertTrue(verdict.isCollected());
+		assertFalse(verdict.isProvenLeak());
+	}
+
+	private LeakVerdict awaitVerdict(LeakDetector leakDetector)
+	        throws InterruptedException {
+		try (MetaspacePressure pressure = new MetaspacePressure(0.9)) {
+			return LeakDetector.awaitVerdicts(
+			    Collections.singletonList(leakDetector), pressure, 2,
+			    TimeUnit.MINUTES).get(0);
+		}
+	}
+
+}
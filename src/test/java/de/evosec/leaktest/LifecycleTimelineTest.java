@@ -0,0 +1,47 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.catalina.Lifecycle;
+import org.junit.Test;
+
+public class LifecycleTimelineTest {
+
+	@Test
+	public void testRingBuffer() {
+		LifecycleTimeline timeline = new LifecycleTimeline(4);
+		for (int i = 0; i < 6; i++) {
+			timeline.record(i, "Context[/test]", Lifecycle.PERIODIC_EVENT);
+		}
+		List<LifecycleTimeline.Event> events = timeline.getEvents();
+		assertEquals(4, events.size());
+		assertEquals(2, events.get(0).getNanos());
+		assertEquals(5, events.get(3).getNanos());
+		assertEquals(2, timeline.getDroppedEvents());
+	}
+
+	@Test
+	public void testChromeTrace() {
+		LifecycleTimeline timeline = new LifecycleTimeline();
+		timeline.record(1000, "Context[/\"test\"]",
+		    Lifecycle.BEFORE_START_EVENT);
+		timeline.record(2500, "Context[/\"test\"]",
+		    Lifecycle.CONFIGURE_START_EVENT);
+		timeline.record(4000, "Context[/\"test\"]",
+		    Lifecycle.AFTER_START_EVENT);
+		assertEquals("{\"traceEvents\":["
+		        + "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,"
+		        + "\"args\":{\"name\":\"Context[/\\\"test\\\"]\"}},"
+		        + "{\"name\":\"start\",\"cat\":\"lifecycle\",\"ph\":\"B\","
+		        + "\"ts\":0.000,\"pid\":1,\"tid\":1},"
+		        + "{\"name\":\"configure_start\",\"cat\":\"lifecycle\","
+		        + "\"ph\":\"i\",\"ts\":1.500,\"pid\":1,\"tid\":1,\"s\":\"t\"},"
+		        + "{\"name\":\"start\",\"cat\":\"lifecycle\",\"ph\":\"E\","
+		        + "\"ts\":3.000,\"pid\":1,\"tid\":1}]}",
+		    timeline.toChromeTrace());
+	}
+
+}
@@ -0,0 +1,46 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SoakTestTest {
+
+	@Test
+	public void testSuccessful() throws Exception {
+		WebAppTest webAppTest = new WebAppTest()
+		    .warPath(getClassPathResource("webapp-test-working.war"))
+		    .testLeak(false);
+		SoakReport report = new SoakTest(webAppTest).cycles(4).run();
+		assertEquals(4, report.getCycles().size());
+		for (SoakReport.Cycle cycle : report.getCycles()) {
+			assertTrue(cycle.getMetaspaceUsed() > 0);
+			assertTrue(cycle.getDeployTime(TimeUnit.NANOSECONDS) > 0);
+			assertTrue(cycle.getUndeployTime(TimeUnit.NANOSECONDS) > 0);
+		}
+		// the soak test leaves neither the flag nor the server behind
+		assertFalse(webAppTest.isSharedServer());
+		assertFalse(SharedTomcat.isRunning());
+	}
+
+	@Test
+	public void testSlope() {
+		assertEquals(0, SoakReport.slope(new double[] {5}), 0);
+		assertEquals(0, SoakReport.slope(new double[] {3, 3, 3}), 0);
+		assertEquals(2, SoakReport.slope(new double[] {1, 3, 5, 7}), 1e-9);
+		assertEquals(-1, SoakReport.slope(new double[] {4, 3, 2, 1}), 1e-9);
+	}
+
+	public Path getClassPathResource(String path) throws Exception {
+		ClassLoader contextClassLoader =
+		        Thread.currentThread().getContextClassLoader();
+		return Paths.get(contextClassLoader.getResource(path).toURI());
+	}
+
+}
@@ -0,0 +1,42 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TrashTest {
+
+	@Test
+	public void testDiscard() throws Exception {
+		assertDiscarded(Files.createTempDirectory("trash-test"));
+	}
+
+	@Test
+	public void testDiscardRamDirectory() throws Exception {
+		// the trash has to be on the same file system as /dev/shm, otherwise
+		// the directory is deleted synchronously
+		assertDiscarded(
+		    BaseDirectories.ramPreferred().create("trash-test", 1024 * 1024));
+	}
+
+	private static void assertDiscarded(Path directory) throws Exception {
+		for (int i = 0; i < 10; i++) {
+			Path subdirectory =
+			        Files.createDirectories(directory.resolve("a/b" + i));
+			for (int j = 0; j < 10; j++) {
+				Files.write(subdirectory.resolve(j + ".txt"), new byte[j]);
+			}
+		}
+
+		assertTrue(Trash.discard(directory));
+		assertFalse(Files.exists(directory));
+		assertTrue(Trash.awaitQuiescence(1, TimeUnit.MINUTES));
+		assertFalse(Files.exists(Trash.trashDirectory(directory)));
+	}
+
+}
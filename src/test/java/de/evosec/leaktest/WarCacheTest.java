@@ -0,0 +1,49 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class WarCacheTest {
+
+	@Test
+	public void testUnpack() throws Exception {
+		Path directory = Files.createTempDirectory("war-cache-test");
+		try {
+			WarCache cache = new WarCache(directory);
+			Path war = getClassPathResource("webapp-test-working.war");
+			Path exploded = cache.unpack(war);
+			assertTrue(Files.isRegularFile(exploded.resolve("WEB-INF/web.xml")));
+
+			long modified = Files.getLastModifiedTime(exploded).toMillis();
+			assertEquals(exploded, cache.unpack(war));
+			assertEquals(modified,
+			    Files.getLastModifiedTime(exploded).toMillis());
+
+			assertNotEquals(exploded, cache
+			    .unpack(getClassPathResource("webapp-test-keystore.war")));
+		} finally {
+			WebAppTest.delete(directory);
+		}
+	}
+
+	@Test
+	public void testHash() throws Exception {
+		Path war = getClassPathResource("webapp-test-working.war");
+		assertEquals(64, WarCache.hash(war).length());
+		assertEquals(WarCache.hash(war), WarCache.hash(war));
+	}
+
+	public Path getClassPathResource(String path) throws Exception {
+		ClassLoader contextClassLoader =
+		        Thread.currentThread().getContextClassLoader();
+		return Paths.get(contextClassLoader.getResource(path).toURI());
+	}
+
+}
@@ -0,0 +1,74 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+public class WarExtractorTest {
+
+	@Test
+	public void testExtract() throws Exception {
+		Path directory = Files.createTempDirectory("war-extractor-test");
+		try {
+			byte[] content = new byte[1024 * 1024];
+			new Random(42).nextBytes(content);
+			Path war = directory.resolve("test.war");
+			try (ZipOutputStream zip =
+			        new ZipOutputStream(Files.newOutputStream(war))) {
+				zip.putNextEntry(new ZipEntry("WEB-INF/"));
+				for (int i = 0; i < 20; i++) {
+					zip.putNextEntry(new ZipEntry("WEB-INF/lib/" + i + ".bin"));
+					zip.write(content);
+				}
+				// no directory entry for the parent
+				zip.putNextEntry(new ZipEntry("css/main.css"));
+				zip.putNextEntry(new ZipEntry("empty.txt"));
+			}
+
+			Path target = directory.resolve("exploded");
+			WarExtractor.extract(war, target, 4);
+			for (int i = 0; i < 20; i++) {
+				assertArrayEquals(content, Files
+				    .readAllBytes(target.resolve("WEB-INF/lib/" + i + ".bin")));
+			}
+			assertTrue(Files.isRegularFile(target.resolve("css/main.css")));
+			assertEquals(0, Files.size(target.resolve("empty.txt")));
+		} finally {
+			WebAppTest.delete(directory);
+		}
+	}
+
+	@Test
+	public void testEntryOutsideOfTarget() throws Exception {
+		Path directory = Files.createTempDirectory("war-extractor-test");
+		try {
+			Path war = directory.resolve("evil.war");
+			try (ZipOutputStream zip =
+			        new ZipOutputStream(Files.newOutputStream(war))) {
+				zip.putNextEntry(new ZipEntry("../evil.txt"));
+				zip.write(1);
+			}
+			try {
+				WarExtractor.extract(war, directory.resolve("exploded"));
+				fail("Expected IOException");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().contains("../evil.txt"));
+			}
+			assertFalse(Files.exists(directory.resolve("evil.txt")));
+		} finally {
+			WebAppTest.delete(directory);
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package de.evosec.leaktest;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class WebAppTestBatchTest {
+
+	@Test
+	public void testSuccessful() throws Exception {
+		WebAppTest working = new WebAppTest()
+		    .warPath(getClassPathResource("webapp-test-working.war"));
+		WebAppTest contextInWar = new WebAppTest()
+		    .warPath(getClassPathResource("webapp-test-working-context.war"));
+		new WebAppTestBatch().add(working).add(contextInWar).run();
+		assertTrue(working.getLeakVerdict().isCollected());
+		assertTrue(contextInWar.getLeakVerdict().isCollected());
+	}
+
+	@Test(expected = WebAppTestException.class)
+	public void testFailingBadWebXML() throws Exception {
+		new WebAppTestBatch()
+		    .add(new WebAppTest()
+		        .warPath(getClassPathResource("webapp-test-working.war")))
+		    .add(new WebAppTest()
+		        .warPath(getClassPathResource("webapp-test-bad-web-xml.war")))
+		    .run();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReloadsRejected() throws Exception {
+		new WebAppTestBatch()
+		    .add(new WebAppTest()
+		        .warPath(getClassPathResource("webapp-test-working.war"))
+		        .reloads(1))
+		    .run();
+	}
+
+	public Path getClassPathResource(String path) throws Exception {
+		ClassLoader contextClassLoader =
+		        Thread.currentThread().getContextClassLoader();
+		return Paths.get(contextClassLoader.getResource(path).toURI());
+	}
+
+}
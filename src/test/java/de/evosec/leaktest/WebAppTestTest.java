@@ -1,7 +1,19 @@
 package de.evosec.leaktest;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -13,6 +25,198 @@ public class WebAppTestTest {
 		new WebAppTest().warPath(warPath).run();
 	}
 
+	@Test
+	public void testLeakVerdict() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		WebAppTest webAppTest = new WebAppTest().warPath(warPath);
+		webAppTest.run();
+		LeakVerdict verdict = webAppTest.getLeakVerdict();
+		assertTrue(verdict.isCollected());
+		assertTrue(verdict.getClassUnloadingCollections() > 0);
+		assertNotNull(verdict.getCollectorName());
+		assertNotNull(verdict.getGcCause());
+	}
+
+	@Test
+	public void testFootprintReport() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		WebAppTest webAppTest = new WebAppTest().warPath(warPath);
+		webAppTest.run();
+		FootprintReport report = webAppTest.getFootprintReport();
+		for (FootprintReport.Phase phase : FootprintReport.Phase.values()) {
+			if (phase != FootprintReport.Phase.AFTER_TRAFFIC) {
+				assertNotNull(report.getSnapshot(phase));
+			}
+		}
+		// no traffic was configured
+		assertNull(report.getSnapshot(FootprintReport.Phase.AFTER_TRAFFIC));
+		assertTrue(report.getDeployedClasses() > 0);
+		assertTrue(report.getDeployedMetaspace() > 0);
+		assertTrue(report.getUnloadedClasses() > 0);
+		// no filler classes are needed if the explicit collection before the
+		// pressure phase already freed the class loader
+		assertTrue(report.getFillerClasses() > 0 || "System.gc()"
+		    .equals(webAppTest.getLeakVerdict().getGcCause()));
+		assertTrue(
+		    report.getUnloadedFillerClasses() <= report.getFillerClasses());
+		assertTrue(report.toString().contains("after deploy"));
+	}
+
+	@Test
+	public void testIoReport() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		WebAppTest webAppTest =
+		        new WebAppTest().warPath(warPath).baseDirectory(
+		            BaseDirectories.ramPreferred(Paths.get("does-not-exist")));
+		webAppTest.run();
+		IoReport report = webAppTest.getIoReport();
+		assertTrue(report.getBaseDirectory().startsWith(
+		    Paths.get(System.getProperty("java.io.tmpdir"))));
+		assertTrue(report.getWorkFiles() > 0);
+		assertTrue(report.getUndeployTime(TimeUnit.NANOSECONDS) > 0);
+		long teardownNanos = report.getTeardownTime(TimeUnit.NANOSECONDS);
+		assertTrue(teardownNanos > 0);
+		assertFalse(Files.exists(report.getBaseDirectory()));
+		// a further shutdown has nothing left to discard and keeps the time
+		webAppTest.shutdownTomcat();
+		assertEquals(teardownNanos,
+		    report.getTeardownTime(TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void testPingAttempts() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		WebAppTest webAppTest =
+		        new WebAppTest().warPath(warPath).pingMaxInterval(50);
+		webAppTest.start();
+		try {
+			List<PingAttempt> attempts = webAppTest.getPingAttempts();
+			assertFalse(attempts.isEmpty());
+			assertTrue(attempts.get(attempts.size() - 1).isSuccessful());
+			assertTrue(attempts.get(0).getOffset(TimeUnit.NANOSECONDS) >= 0);
+		} finally {
+			webAppTest.stop();
+		}
+	}
+
+	@Test
+	public void testCrawl() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		WebAppTest webAppTest = new WebAppTest().warPath(warPath).crawl(true);
+		webAppTest.run();
+		Map<String, Long> paths =
+		        webAppTest.getCrawlReport().getRequestsByPath();
+		assertEquals(Long.valueOf(1), paths.get("/test/"));
+		assertEquals(Long.valueOf(1), paths.get("/test/index.jsp"));
+		assertTrue(webAppTest.getLeakVerdict().isCollected());
+	}
+
+	@Test
+	public void testTraffic() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		WebAppTest webAppTest = new WebAppTest().warPath(warPath)
+		    .traffic(new Traffic().request("", 3).request("index.jsp", 1)
+		        .clients(4).requests(400));
+		webAppTest.run();
+		TrafficReport report = webAppTest.getTrafficReport();
+		assertEquals(400, report.getRequests());
+		assertEquals(0, report.getFailedRequests());
+		assertEquals(Long.valueOf(300),
+		    report.getRequestsByPath().get("/test/"));
+		assertEquals(Long.valueOf(100),
+		    report.getRequestsByPath().get("/test/index.jsp"));
+		// Tomcat closes a connection after 100 requests by default
+		assertTrue(report.toString(), report.getConnections() >= 4
+		        && report.getConnections() <= 8);
+		assertTrue(webAppTest.getLeakVerdict().isCollected());
+	}
+
+	@Test(expected = WebAppTestException.class)
+	public void testTrafficFailure() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		new WebAppTest().warPath(warPath)
+		    .traffic(new Traffic().request("missing", 1).requests(10)).run();
+	}
+
+	@Test
+	public void testLifecycleTimeline() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		WebAppTest webAppTest = new WebAppTest().warPath(warPath);
+		webAppTest.run();
+		String timeline = webAppTest.getLifecycleTimeline().toString();
+		assertTrue(timeline, timeline.contains("Server before_init"));
+		assertTrue(timeline, timeline.contains("Context[/test] after_start"));
+		assertTrue(timeline,
+		    timeline.contains("Context[/test] after_destroy"));
+		assertTrue(timeline, timeline.contains("Host[localhost] after_stop"));
+	}
+
+	@Test
+	public void testSharedServer() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		try {
+			WebAppTest first =
+			        new WebAppTest().warPath(warPath).sharedServer(true);
+			first.run();
+			assertTrue(first.getLeakVerdict().isCollected());
+			try {
+				new WebAppTest().warPath(warPath).sharedServer(true)
+				    .pingEndPoint("index.html").deployDuration(1).run();
+				fail("Expected WebAppTestException");
+			} catch (WebAppTestException e) {
+				// the server has to survive a failed deployment
+			}
+			WebAppTest second =
+			        new WebAppTest().warPath(warPath).sharedServer(true);
+			second.run();
+			assertTrue(second.getLeakVerdict().isCollected());
+			assertEquals(first.getPort(), second.getPort());
+		} finally {
+			SharedTomcat.shutdown();
+		}
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working.war");
+		WebAppTest webAppTest = new WebAppTest().warPath(warPath).reloads(2);
+		webAppTest.run();
+		assertEquals(2, webAppTest.getReloadGenerations().size());
+		for (ReloadGeneration generation : webAppTest
+		    .getReloadGenerations()) {
+			assertTrue(generation.getLeakVerdict().isCollected());
+			assertTrue(generation.getReloadTime(TimeUnit.NANOSECONDS) > 0);
+			assertTrue(generation.getRequests() > 0);
+		}
+		assertTrue(webAppTest.getLeakVerdict().isCollected());
+	}
+
+	@Test
+	public void testUnpackCache() throws Exception {
+		Path warPath = getClassPathResource("webapp-test-working-context.war");
+		new WebAppTest().warPath(warPath).unpackCache(true).run();
+		Path exploded = Paths.get(System.getProperty("java.io.tmpdir"))
+		    .resolve("tomcat-classloader-leak-test-wars")
+		    .resolve(WarCache.hash(warPath));
+		assertTrue(Files.isDirectory(exploded));
+
+		// only served if the second deployment runs from the cached directory
+		Path marker = exploded.resolve("unpack-cache-marker.txt");
+		Files.write(marker, new byte[] {'x'});
+		FileTime unpacked = Files.getLastModifiedTime(exploded);
+		try {
+			new WebAppTest().warPath(warPath).unpackCache(true)
+			    .sharedServer(true).testLeak(false)
+			    .traffic(new Traffic().request("unpack-cache-marker.txt", 1)
+			        .requests(1))
+			    .run();
+			assertEquals(unpacked, Files.getLastModifiedTime(exploded));
+		} finally {
+			Files.delete(marker);
+			SharedTomcat.shutdown();
+		}
+	}
+
 	@Test
 	public void testSuccessfulKeyStore() throws Exception {
 		Path warPath = getClassPathResource("webapp-test-keystore.war");